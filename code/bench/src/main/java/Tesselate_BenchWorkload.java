@@ -0,0 +1,159 @@
+import tessellate.bench.Workload;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Game-side half of the benchmarks; see {@link Workload} for why it sits
+ * in the default package. All inputs are drawn from a seeded stream in
+ * {@link #setUp}, so every run measures exactly the same work.
+ */
+public final class Tesselate_BenchWorkload implements Workload {
+
+    private static final double MEDIUM_SPACING = 85; // matches the UI's medium density
+    private static final double ASPECT = 1.6;
+
+    private Tesselate_Board board;
+    private Tesselate_BoardAnalysis analysis;
+    private Tesselate_Engine midGame;
+    private Tesselate_Engine replayEngine;
+    private Tesselate_Engine playoutEngine;
+    private long gameSeed;
+
+    // Dots of the segment pairs and triples, and the dot pairs to validate
+    private final int[] quads = new int[4 * BATCH];
+    private final int[] pairs = new int[2 * BATCH];
+
+    // Recorded game: a candidate id, or -face for a roll
+    private int[] script;
+
+    @Override
+    public void setUp(String name, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        board = createBoard(name, seed);
+        analysis = Tesselate_BoardAnalysis.build(board, Tesselate_Engine.MAX_EDGE_LENGTH,
+                Tesselate_Engine.DOT_RADIUS);
+        gameSeed = seed;
+
+        for (int i = 0; i < quads.length; i++) quads[i] = rnd.nextInt(board.size());
+
+        // Record one random game, then replay half of it for the validation benchmark
+        Tesselate_Engine e = new Tesselate_Engine(analysis, seed);
+        int[] moves = new int[16];
+        int n = 0;
+        while (!e.isGameOver()) {
+            if (n + 2 > moves.length) moves = Arrays.copyOf(moves, moves.length * 2);
+            if (e.edgesRemaining() == 0) moves[n++] = -e.rollDice();
+            int c = e.legalMove(rnd.nextInt(e.legalMoveCount()));
+            e.applyCandidate(c);
+            moves[n++] = c;
+        }
+        script = Arrays.copyOf(moves, n);
+        int half = n / 2;
+        while (half < n && script[half - 1] >= 0) half++; // stop right after a roll, so edges are left
+        midGame = new Tesselate_Engine(analysis, seed);
+        play(midGame, script, half);
+
+        // Half the checked pairs are candidates (most of them dead by now), half any dots
+        // a little beyond reach of each other, which take the crossing and too-long paths
+        for (int i = 0; i < BATCH; i++) {
+            int c = rnd.nextInt(analysis.candidateCount());
+            int a = analysis.candidateU(c), b = analysis.candidateV(c);
+            if ((i & 1) == 1) {
+                do {
+                    b = rnd.nextInt(board.size());
+                } while (a == b || board.distance(a, b) > 1.2 * Tesselate_Engine.MAX_EDGE_LENGTH);
+            }
+            pairs[2 * i] = a;
+            pairs[2 * i + 1] = b;
+        }
+
+        replayEngine = new Tesselate_Engine(analysis, seed);
+        playoutEngine = new Tesselate_Engine(analysis, seed);
+    }
+
+    private static Tesselate_Board createBoard(String name, long seed) {
+        int dash = name.indexOf('-');
+        String kind = dash < 0 ? name : name.substring(0, dash);
+        int n = Integer.parseInt(name.substring(dash + 1));
+        switch (kind) {
+            case "pattern":
+                return Tesselate_Patterns.create(n, 450, 260);
+            case "random":
+                double h = Math.sqrt(n * MEDIUM_SPACING * MEDIUM_SPACING / ASPECT);
+                return Tesselate_BoardGenerator.generate(n, 0, 0, h * ASPECT, h, seed);
+            default:
+                throw new IllegalArgumentException("unknown board " + name);
+        }
+    }
+
+    @Override
+    public int segmentsIntersect() {
+        Tesselate_Board b = board;
+        int[] q = quads;
+        int hits = 0;
+        for (int i = 0; i < q.length; i += 4) {
+            if (Tesselate_Geometry.segmentsIntersect(b.x(q[i]), b.y(q[i]), b.x(q[i + 1]), b.y(q[i + 1]),
+                    b.x(q[i + 2]), b.y(q[i + 2]), b.x(q[i + 3]), b.y(q[i + 3]))) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Override
+    public int orientation() {
+        Tesselate_Board b = board;
+        int[] q = quads;
+        int sum = 0;
+        for (int i = 0; i < q.length; i += 4) {
+            sum += Tesselate_Geometry.orientation(b.x(q[i]), b.y(q[i]),
+                    b.x(q[i + 1]), b.y(q[i + 1]), b.x(q[i + 2]), b.y(q[i + 2]));
+        }
+        return sum;
+    }
+
+    @Override
+    public int analyse() {
+        return Tesselate_BoardAnalysis.build(board, Tesselate_Engine.MAX_EDGE_LENGTH, Tesselate_Engine.DOT_RADIUS)
+                .totalConflicts();
+    }
+
+    @Override
+    public int check() {
+        Tesselate_Engine e = midGame;
+        int sum = 0;
+        for (int i = 0; i < pairs.length; i += 2) {
+            sum += e.check(pairs[i], pairs[i + 1]).ordinal();
+        }
+        return sum;
+    }
+
+    @Override
+    public int replay() {
+        Tesselate_Engine e = replayEngine;
+        e.reset(gameSeed);
+        play(e, script, script.length);
+        return e.score(Tesselate_Engine.Player.RED);
+    }
+
+    private static void play(Tesselate_Engine e, int[] script, int steps) {
+        for (int i = 0; i < steps; i++) {
+            int m = script[i];
+            if (m < 0) e.applyRoll(-m);
+            else e.applyCandidate(m);
+        }
+    }
+
+    @Override
+    public int randomPlayout(long seed) {
+        Tesselate_Engine e = playoutEngine;
+        e.reset(seed);
+        SplittableRandom rnd = new SplittableRandom(seed);
+        while (!e.isGameOver()) {
+            if (e.edgesRemaining() == 0) e.applyRoll(1 + rnd.nextInt(6));
+            e.applyCandidate(e.legalMove(rnd.nextInt(e.legalMoveCount())));
+        }
+        return e.triangleCount();
+    }
+}
@@ -0,0 +1,45 @@
+package tessellate.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** The geometric predicates, per call, on segments taken from a generated board. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.load();
+        workload.setUp("random-1000", 42);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workload.BATCH)
+    public int segmentsIntersect() {
+        return workload.segmentsIntersect();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workload.BATCH)
+    public int orientation() {
+        return workload.orientation();
+    }
+}
@@ -0,0 +1,64 @@
+package tessellate.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The move path on every board size: analysing a new board, validating
+ * moves, drawing edges and claiming triangles, and whole random games.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MovePathBenchmark {
+
+    @Param({"pattern-0", "pattern-1", "pattern-2", "pattern-3", "pattern-4",
+            "pattern-5", "pattern-6", "pattern-7", "pattern-8", "pattern-9",
+            "random-1000", "random-10000"})
+    public String board;
+
+    private Workload workload;
+    private long seed;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.load();
+        workload.setUp(board, 42);
+    }
+
+    @Benchmark
+    public int analyse() {
+        return workload.analyse();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workload.BATCH)
+    public int check() {
+        return workload.check();
+    }
+
+    @Benchmark
+    public int replay() {
+        return workload.replay();
+    }
+
+    @Benchmark
+    public int randomPlayout() {
+        return workload.randomPlayout(seed++);
+    }
+}
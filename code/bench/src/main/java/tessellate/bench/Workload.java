@@ -0,0 +1,49 @@
+package tessellate.bench;
+
+/**
+ * Bridge from the benchmarks to the game.
+ *
+ * The game classes live in the default package, which no named package can
+ * import, and JMH refuses benchmarks in the default package. So the work
+ * itself is done by {@code Tesselate_BenchWorkload}, a default-package class
+ * that implements this interface and is loaded by name once per trial.
+ * Every call site sees a single implementation, so the JIT inlines the
+ * calls and the bridge does not show up in the numbers.
+ */
+public interface Workload {
+
+    /** Items per batch call; batch benchmarks divide by this. */
+    int BATCH = 1024;
+
+    /**
+     * Prepares a board: {@code pattern-N} for built-in pattern N, or
+     * {@code random-N} for a generated board of N dots at medium density.
+     */
+    void setUp(String board, long seed);
+
+    /** Segment intersection tests over BATCH pairs of board segments; returns the hits. */
+    int segmentsIntersect();
+
+    /** Orientation tests over BATCH dot triples; returns their sum. */
+    int orientation();
+
+    /** Full board analysis: reach, edges through dots and the crossing graph; returns the conflict count. */
+    int analyse();
+
+    /** Move validation of BATCH dot pairs halfway through a game; returns a checksum of the results. */
+    int check();
+
+    /** Replays a recorded game, claiming every triangle on the way; returns RED's score. */
+    int replay();
+
+    /** Plays a uniformly random game to the end; returns the number of triangles. */
+    int randomPlayout(long seed);
+
+    static Workload load() {
+        try {
+            return (Workload) Class.forName("Tesselate_BenchWorkload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("benchmark workload not on the class path", e);
+        }
+    }
+}
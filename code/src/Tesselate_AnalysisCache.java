@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Board analyses kept for reuse, keyed by the layout rather than by where
+ * it sits.
+ *
+ * The key is a fingerprint of the dot count, the rule constants and every
+ * dot's offset from dot 0, rounded to {@link #QUANTUM}. A pattern centred
+ * somewhere else, as a network client may place it, therefore finds the
+ * analysis it had before; only the dot grid is rebuilt (see {@link Tesselate_BoardAnalysis#on}). A
+ * hit is checked dot by dot against the stored layout, so a fingerprint
+ * collision is only a miss.
+ *
+ * Analyses stay in memory, least recently used first out once their
+ * arrays pass {@link #MEMORY_BUDGET} ints. With a directory, each one is
+ * also written there as a small binary file and read back in later runs
+ * and by other processes (bots, servers, tournaments) sharing it. The file
+ * holds the layout, then for each dot its candidates as varint gaps, then
+ * for each candidate its conflicts with higher ids as varint gaps, then
+ * for each candidate the third corners above both its ends of the empty
+ * triangles on it, as varint gaps. The other half of the conflict graph
+ * and the other two sides of each triangle are rebuilt on load. Files are
+ * written to a temporary name and moved into place, so a reader never
+ * sees a torn one.
+ *
+ * -Dtessellate.analysisCache=DIR gives {@link #shared()} a directory.
+ */
+public final class Tesselate_AnalysisCache {
+
+    static final int MAGIC = 0x54414e43; // "TANC"
+    static final int VERSION = 2;
+    static final double QUANTUM = 1e-6;               // layouts this close (in board units) are the same
+    private static final long MEMORY_BUDGET = 1 << 24; // ints held by cached analyses, about 64 MB
+
+    private static volatile Tesselate_AnalysisCache shared;
+
+    private final Path dir; // null for memory only
+    private final LinkedHashMap<Long, Tesselate_BoardAnalysis> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryInts;
+    private long hits, diskHits, misses;
+
+    private static final System.Logger LOG = System.getLogger(Tesselate_AnalysisCache.class.getName());
+
+    public Tesselate_AnalysisCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /** The process-wide cache; on disk only if -Dtessellate.analysisCache is set. */
+    public static Tesselate_AnalysisCache shared() {
+        Tesselate_AnalysisCache c = shared;
+        if (c == null) {
+            synchronized (Tesselate_AnalysisCache.class) {
+                if (shared == null) {
+                    String dir = System.getProperty("tessellate.analysisCache");
+                    shared = new Tesselate_AnalysisCache(dir == null || dir.isEmpty() ? null : Path.of(dir));
+                }
+                c = shared;
+            }
+        }
+        return c;
+    }
+
+    /** The analysis of {@code board}, from memory, from disk or built and stored. */
+    public Tesselate_BoardAnalysis get(Tesselate_Board board, double maxEdgeLength, double dotRadius) {
+        long key = fingerprint(board, maxEdgeLength, dotRadius);
+        synchronized (this) {
+            Tesselate_BoardAnalysis a = memory.get(key);
+            if (a != null && sameLayout(a, board, maxEdgeLength, dotRadius)) {
+                hits++;
+                return a.on(board);
+            }
+        }
+        Tesselate_BoardAnalysis a = dir == null ? null : load(key, board, maxEdgeLength, dotRadius);
+        if (a != null) {
+            synchronized (this) {
+                diskHits++;
+            }
+        } else {
+            a = Tesselate_BoardAnalysis.build(board, maxEdgeLength, dotRadius);
+            synchronized (this) {
+                misses++;
+            }
+            if (dir != null) save(key, a);
+        }
+        remember(key, a);
+        return a;
+    }
+
+    public synchronized long hits() { return hits; }
+    public synchronized long diskHits() { return diskHits; }
+    public synchronized long misses() { return misses; }
+    public synchronized int size() { return memory.size(); }
+
+    private synchronized void remember(long key, Tesselate_BoardAnalysis a) {
+        Tesselate_BoardAnalysis old = memory.put(key, a);
+        if (old != null) memoryInts -= weight(old);
+        memoryInts += weight(a);
+        Iterator<Tesselate_BoardAnalysis> eldest = memory.values().iterator();
+        while (memoryInts > MEMORY_BUDGET && memory.size() > 1) {
+            memoryInts -= weight(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private static long weight(Tesselate_BoardAnalysis a) {
+        return a.board().size() + 4L * a.candidateCount() + 2L * a.totalConflicts() + 3L * a.totalTriangles();
+    }
+
+    static long fingerprint(Tesselate_Board board, double maxEdgeLength, double dotRadius) {
+        long h = Tesselate_Engine.mix(board.size() ^ Double.doubleToLongBits(maxEdgeLength) * 31
+                ^ Double.doubleToLongBits(dotRadius));
+        if (board.size() == 0) return h;
+        double x0 = board.x(0), y0 = board.y(0);
+        for (int i = 1; i < board.size(); i++) {
+            h = Tesselate_Engine.mix(h + Math.round((board.x(i) - x0) / QUANTUM));
+            h = Tesselate_Engine.mix(h + Math.round((board.y(i) - y0) / QUANTUM));
+        }
+        return h;
+    }
+
+    private static boolean sameLayout(Tesselate_BoardAnalysis a, Tesselate_Board board, double maxEdgeLength,
+                                      double dotRadius) {
+        Tesselate_Board b = a.board();
+        if (b.size() != board.size() || a.maxEdgeLength() != maxEdgeLength || a.dotRadius() != dotRadius) return false;
+        for (int i = 1; i < b.size(); i++) {
+            if (Math.abs((b.x(i) - b.x(0)) - (board.x(i) - board.x(0))) > QUANTUM) return false;
+            if (Math.abs((b.y(i) - b.y(0)) - (board.y(i) - board.y(0))) > QUANTUM) return false;
+        }
+        return true;
+    }
+
+    private Path file(long key) {
+        return dir.resolve(String.format("%016x.analysis", key));
+    }
+
+    // Null if the file is missing, unreadable or for another layout; the caller then builds
+    private Tesselate_BoardAnalysis load(long key, Tesselate_Board board, double maxEdgeLength, double dotRadius) {
+        try (FileChannel ch = FileChannel.open(file(key), StandardOpenOption.READ)) {
+            ByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+            int n = in.getInt();
+            if (n != board.size() || in.getDouble() != maxEdgeLength || in.getDouble() != dotRadius) return null;
+            double x0 = in.getDouble(), y0 = in.getDouble();
+            for (int i = 1; i < n; i++) {
+                if (Math.abs((in.getDouble() - x0) - (board.x(i) - board.x(0))) > QUANTUM
+                        || Math.abs((in.getDouble() - y0) - (board.y(i) - board.y(0))) > QUANTUM) {
+                    return null; // another layout with the same fingerprint
+                }
+            }
+
+            int candCount = Tesselate_Protocol.getVarint(in);
+            int[] candU = new int[candCount], candV = new int[candCount], firstByU = new int[n + 1];
+            int c = 0;
+            for (int u = 0; u < n; u++) {
+                firstByU[u] = c;
+                int v = u;
+                for (int k = Tesselate_Protocol.getVarint(in); k > 0; k--) {
+                    v += Tesselate_Protocol.getVarint(in);
+                    candU[c] = u;
+                    candV[c++] = v;
+                }
+            }
+            firstByU[n] = c;
+            if (c != candCount) return null;
+
+            // Upper halves first, then each row is its lower half (ascending) followed by its upper half
+            int[] upperStart = new int[candCount + 1];
+            int[] upper = new int[16];
+            int[] degree = new int[candCount];
+            for (c = 0; c < candCount; c++) {
+                int k = Tesselate_Protocol.getVarint(in);
+                upperStart[c + 1] = upperStart[c] + k;
+                if (upperStart[c + 1] > upper.length) {
+                    upper = Arrays.copyOf(upper, Math.max(upper.length * 2, upperStart[c + 1]));
+                }
+                for (int i = upperStart[c], d = c; i < upperStart[c + 1]; i++) {
+                    d += Tesselate_Protocol.getVarint(in);
+                    upper[i] = d;
+                    degree[d]++;
+                }
+                degree[c] += k;
+            }
+            int[] conflictStart = new int[candCount + 1];
+            for (c = 0; c < candCount; c++) conflictStart[c + 1] = conflictStart[c] + degree[c];
+            int[] conflicts = new int[conflictStart[candCount]];
+            int[] fill = Arrays.copyOf(conflictStart, candCount);
+            for (c = 0; c < candCount; c++) {
+                for (int i = upperStart[c]; i < upperStart[c + 1]; i++) conflicts[fill[upper[i]]++] = c;
+            }
+            for (c = 0; c < candCount; c++) {
+                for (int i = upperStart[c]; i < upperStart[c + 1]; i++) conflicts[fill[c]++] = upper[i];
+            }
+
+            int[] triangles = new int[16];
+            int t = 0;
+            for (c = 0; c < candCount; c++) {
+                for (int k = Tesselate_Protocol.getVarint(in), corner = candV[c]; k > 0; k--) {
+                    corner += Tesselate_Protocol.getVarint(in);
+                    if (t + 2 > triangles.length) triangles = Arrays.copyOf(triangles, triangles.length * 2);
+                    triangles[t++] = c;
+                    triangles[t++] = corner;
+                }
+            }
+            return Tesselate_BoardAnalysis.of(board, maxEdgeLength, dotRadius,
+                    candU, candV, firstByU, conflictStart, conflicts, Arrays.copyOf(triangles, t));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            LOG.log(System.Logger.Level.WARNING, "Ignoring cached analysis " + file(key) + ": " + e);
+            return null;
+        }
+    }
+
+    private void save(long key, Tesselate_BoardAnalysis a) {
+        Tesselate_Board b = a.board();
+        int n = b.size(), candCount = a.candidateCount();
+        long bound = 28 + 16L * n + 5L * (1 + n + 3L * candCount + a.totalConflicts() + a.totalTriangles());
+        if (bound > Integer.MAX_VALUE) return; // too big to be worth a file
+        ByteBuffer out = ByteBuffer.allocate((int) bound);
+        out.putInt(MAGIC).putInt(VERSION).putInt(n).putDouble(a.maxEdgeLength()).putDouble(a.dotRadius());
+        for (int i = 0; i < n; i++) out.putDouble(b.x(i)).putDouble(b.y(i));
+        Tesselate_Protocol.putVarint(out, candCount);
+        int c = 0;
+        for (int u = 0; u < n; u++) {
+            int first = c;
+            while (c < candCount && a.candidateU(c) == u) c++;
+            Tesselate_Protocol.putVarint(out, c - first);
+            for (int i = first, v = u; i < c; v = a.candidateV(i), i++) {
+                Tesselate_Protocol.putVarint(out, a.candidateV(i) - v);
+            }
+        }
+        for (c = 0; c < candCount; c++) {
+            // Rows are sorted, so the upper half is a suffix
+            int count = a.conflictCount(c), lower = 0;
+            while (lower < count && a.conflict(c, lower) < c) lower++;
+            Tesselate_Protocol.putVarint(out, count - lower);
+            for (int i = lower, d = c; i < count; d = a.conflict(c, i), i++) {
+                Tesselate_Protocol.putVarint(out, a.conflict(c, i) - d);
+            }
+        }
+        for (c = 0; c < candCount; c++) {
+            // Rows are sorted; a triangle is stored once, on its side whose ends are both below the third corner
+            int count = a.triangleCount(c), below = 0, v = a.candidateV(c);
+            while (below < count && a.triangleCorner(c, below) < v) below++;
+            Tesselate_Protocol.putVarint(out, count - below);
+            for (int i = below, k = v; i < count; k = a.triangleCorner(c, i), i++) {
+                Tesselate_Protocol.putVarint(out, a.triangleCorner(c, i) - k);
+            }
+        }
+        out.flip();
+
+        Path target = file(key);
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) ch.write(out);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Analysis not cached: " + e.getMessage());
+        }
+    }
+}
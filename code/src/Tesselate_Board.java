@@ -0,0 +1,61 @@
+import java.util.Arrays;
+
+/**
+ * Immutable dot layout for one game.
+ * Coordinates are kept in plain double arrays so the rules engine never
+ * needs JavaFX geometry classes. They are board units, not pixels: the
+ * window maps them onto the screen with one transform, so a layout means
+ * the same game at every window size.
+ */
+public final class Tesselate_Board {
+
+    /** The area layouts are built in, in board units; patterns are centred on it. */
+    public static final double WIDTH = 900, HEIGHT = 520;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final int pattern;
+
+    private Tesselate_Board(double[] xs, double[] ys, int pattern) {
+        this.xs = xs;
+        this.ys = ys;
+        this.pattern = pattern;
+    }
+
+    public int size() { return xs.length; }
+    public double x(int i) { return xs[i]; }
+    public double y(int i) { return ys[i]; }
+
+    /** Index of the built-in pattern this board came from, or -1. */
+    public int pattern() { return pattern; }
+
+    public double distance(int a, int b) {
+        double dx = xs[a] - xs[b];
+        double dy = ys[a] - ys[b];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /** Growable point list used by the layout generators. */
+    public static final class Builder {
+        private double[] xs = new double[32];
+        private double[] ys = new double[32];
+        private int n = 0;
+
+        public Builder add(double x, double y) {
+            if (n == xs.length) {
+                xs = Arrays.copyOf(xs, n * 2);
+                ys = Arrays.copyOf(ys, n * 2);
+            }
+            xs[n] = x;
+            ys[n] = y;
+            n++;
+            return this;
+        }
+
+        public int size() { return n; }
+
+        public Tesselate_Board build(int pattern) {
+            return new Tesselate_Board(Arrays.copyOf(xs, n), Arrays.copyOf(ys, n), pattern);
+        }
+    }
+}
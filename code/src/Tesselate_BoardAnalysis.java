@@ -0,0 +1,378 @@
+import java.util.Arrays;
+
+/**
+ * Geometry of a board worked out once, before the first move.
+ *
+ * A candidate is a pair of dots no further apart than the maximum edge
+ * length whose segment does not pass through another dot; these are the
+ * only edges that can ever be drawn. Two candidates conflict when their
+ * segments cross, so drawing one rules the other out for good.
+ *
+ * A triangle is three candidates forming a triangle with no dot strictly
+ * inside it (no dot can lie on a side, since candidates avoid dots). Only
+ * these can ever be claimed, so they are found here once, each with a
+ * point-in-triangle test against the dots the grid holds in its bounding
+ * box, and kept per candidate as the sorted third corners. Claimed
+ * triangles can then never overlap either: candidates that are drawn
+ * never cross, so two triangles could only overlap if one held a corner
+ * of the other inside it.
+ *
+ * Candidates are numbered by (u, v) with u < v, ordered by u then v, and
+ * the conflict graph and the triangles are stored in compressed rows, each
+ * sorted. Instances are immutable and safe to share between engine copies
+ * and threads. Nothing but the dot grid depends on where the board sits,
+ * so {@link #on} reuses an analysis for the same layout moved elsewhere
+ * (see {@link Tesselate_AnalysisCache}).
+ */
+public final class Tesselate_BoardAnalysis {
+
+    private final Tesselate_Board board;
+    private final double maxEdgeLength;
+    private final double dotRadius;
+    private final Tesselate_SpatialGrid dotGrid;
+
+    // Candidate endpoints, and the first candidate whose u is each dot
+    private final int[] candU;
+    private final int[] candV;
+    private final int[] firstByU;
+
+    // Conflict graph: conflicts of candidate c are conflicts[conflictStart[c] .. conflictStart[c + 1])
+    private final int[] conflictStart;
+    private final int[] conflicts;
+
+    // Triangles: third corners of those candidate c is a side of are
+    // triangleCorners[triangleStart[c] .. triangleStart[c + 1])
+    private final int[] triangleStart;
+    private final int[] triangleCorners;
+
+    // Triangle ids: those whose lowest side is c, i.e. the tail of c's row with
+    // corners above candV(c), are numbered triangleIdStart[c] .. triangleIdStart[c + 1)
+    private final int[] triangleIdStart;
+
+    private Tesselate_BoardAnalysis(Tesselate_Board board, double maxEdgeLength, double dotRadius,
+                                    Tesselate_SpatialGrid dotGrid, int[] candU, int[] candV, int[] firstByU,
+                                    int[] conflictStart, int[] conflicts, int[] triangleStart, int[] triangleCorners,
+                                    int[] triangleIdStart) {
+        this.board = board;
+        this.maxEdgeLength = maxEdgeLength;
+        this.dotRadius = dotRadius;
+        this.dotGrid = dotGrid;
+        this.candU = candU;
+        this.candV = candV;
+        this.firstByU = firstByU;
+        this.conflictStart = conflictStart;
+        this.conflicts = conflicts;
+        this.triangleStart = triangleStart;
+        this.triangleCorners = triangleCorners;
+        this.triangleIdStart = triangleIdStart;
+    }
+
+    public Tesselate_Board board() { return board; }
+    public double maxEdgeLength() { return maxEdgeLength; }
+    public double dotRadius() { return dotRadius; }
+    public Tesselate_SpatialGrid dotGrid() { return dotGrid; }
+
+    public int candidateCount() { return candU.length; }
+    public int candidateU(int c) { return candU[c]; }
+    public int candidateV(int c) { return candV[c]; }
+
+    public int conflictCount(int c) { return conflictStart[c + 1] - conflictStart[c]; }
+    public int conflict(int c, int i) { return conflicts[conflictStart[c] + i]; }
+    public int totalConflicts() { return conflicts.length / 2; }
+
+    /** Number of empty triangles candidate c is a side of. */
+    public int triangleCount(int c) { return triangleStart[c + 1] - triangleStart[c]; }
+    /** Third corner of the i-th empty triangle on candidate c, ascending in i. */
+    public int triangleCorner(int c, int i) { return triangleCorners[triangleStart[c] + i]; }
+    public int totalTriangles() { return triangleCorners.length / 3; }
+
+    /**
+     * Id 0 .. totalTriangles() of the i-th triangle on candidate c, the same
+     * from all three of its sides; ids are dense, for triangle bitmaps.
+     */
+    public int triangleId(int c, int i) {
+        int u = candU[c], v = candV[c], k = triangleCorner(c, i);
+        if (k < v) {
+            // The lowest side is (min(u, k), max(u, k)) and v is its third corner
+            c = find(Math.min(u, k), Math.max(u, k));
+            i = Arrays.binarySearch(triangleCorners, triangleStart[c], triangleStart[c + 1], v) - triangleStart[c];
+        }
+        return triangleIdStart[c + 1] - triangleCount(c) + i;
+    }
+
+    /** Whether candidate c and dot k form an empty triangle of candidates. */
+    public boolean isTriangle(int c, int k) {
+        return Arrays.binarySearch(triangleCorners, triangleStart[c], triangleStart[c + 1], k) >= 0;
+    }
+
+    /** Candidate id of edge (a, b), or -1 if that edge can never be drawn. */
+    public int find(int a, int b) {
+        return find(candU, candV, firstByU, a, b);
+    }
+
+    private static int find(int[] candU, int[] candV, int[] firstByU, int a, int b) {
+        if (a == b) return -1;
+        int u = Math.min(a, b), v = Math.max(a, b);
+        int lo = firstByU[u], hi = firstByU[u + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int m = candV[mid];
+            if (m < v) lo = mid + 1;
+            else if (m > v) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    public static Tesselate_BoardAnalysis build(Tesselate_Board board, double maxEdgeLength, double dotRadius) {
+        Builder b = new Builder(board, maxEdgeLength, dotRadius, dotGrid(board, maxEdgeLength, dotRadius));
+        b.findCandidates();
+        b.findConflicts();
+        b.findTriangles();
+        return of(board, maxEdgeLength, dotRadius, b.dotGrid,
+                Arrays.copyOf(b.candU, b.candCount), Arrays.copyOf(b.candV, b.candCount), b.firstByU,
+                b.conflictStart, b.conflicts, Arrays.copyOf(b.triangles, b.triangleCount));
+    }
+
+    /** This analysis for {@code moved}, which must be the same layout translated; only the dot grid is rebuilt. */
+    public Tesselate_BoardAnalysis on(Tesselate_Board moved) {
+        if (moved == board) return this;
+        if (moved.size() != board.size()) throw new IllegalArgumentException("different layout");
+        return new Tesselate_BoardAnalysis(moved, maxEdgeLength, dotRadius, dotGrid(moved, maxEdgeLength, dotRadius),
+                candU, candV, firstByU, conflictStart, conflicts, triangleStart, triangleCorners, triangleIdStart);
+    }
+
+    /**
+     * An analysis from its candidate, conflict and triangle arrays, as
+     * {@link Tesselate_AnalysisCache} stores them; the arrays are kept, not
+     * copied. {@code triangles} lists each triangle once as (c, k) with
+     * k > candidateV(c), sorted.
+     */
+    static Tesselate_BoardAnalysis of(Tesselate_Board board, double maxEdgeLength, double dotRadius,
+                                      int[] candU, int[] candV, int[] firstByU, int[] conflictStart, int[] conflicts,
+                                      int[] triangles) {
+        return of(board, maxEdgeLength, dotRadius, dotGrid(board, maxEdgeLength, dotRadius),
+                candU, candV, firstByU, conflictStart, conflicts, triangles);
+    }
+
+    // Spreads each triangle (c, k) over the rows of its three sides
+    private static Tesselate_BoardAnalysis of(Tesselate_Board board, double maxEdgeLength, double dotRadius,
+                                              Tesselate_SpatialGrid dotGrid, int[] candU, int[] candV, int[] firstByU,
+                                              int[] conflictStart, int[] conflicts, int[] triangles) {
+        int n = candU.length;
+        int[] sides = new int[triangles.length / 2 * 3];
+        int[] start = new int[n + 1];
+        int[] idStart = new int[n + 1];
+        for (int i = 0, j = 0; i < triangles.length; i += 2, j += 3) {
+            int c = triangles[i], k = triangles[i + 1];
+            idStart[c + 1]++;
+            sides[j] = c;
+            sides[j + 1] = find(candU, candV, firstByU, candU[c], k);
+            sides[j + 2] = find(candU, candV, firstByU, candV[c], k);
+            if (sides[j + 1] < 0 || sides[j + 2] < 0) throw new IllegalArgumentException("not a triangle: " + c + ", " + k);
+            start[c + 1]++;
+            start[sides[j + 1] + 1]++;
+            start[sides[j + 2] + 1]++;
+        }
+        for (int c = 0; c < n; c++) {
+            start[c + 1] += start[c];
+            idStart[c + 1] += idStart[c];
+        }
+        int[] corners = new int[sides.length];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int i = 0, j = 0; i < triangles.length; i += 2, j += 3) {
+            int c = triangles[i], k = triangles[i + 1];
+            corners[fill[sides[j]]++] = k;
+            corners[fill[sides[j + 1]]++] = candV[c];
+            corners[fill[sides[j + 2]]++] = candU[c];
+        }
+        for (int c = 0; c < n; c++) Arrays.sort(corners, start[c], start[c + 1]);
+        return new Tesselate_BoardAnalysis(board, maxEdgeLength, dotRadius, dotGrid,
+                candU, candV, firstByU, conflictStart, conflicts, start, corners, idStart);
+    }
+
+    private static Tesselate_SpatialGrid dotGrid(Tesselate_Board board, double maxEdgeLength, double dotRadius) {
+        return Tesselate_SpatialGrid.forDots(board, Tesselate_SpatialGrid.dotCellSize(board, dotRadius, maxEdgeLength));
+    }
+
+    // Scratch state for one build; grid visitors read the query fields
+    private static final class Builder {
+        final Tesselate_Board board;
+        final double maxEdgeLength, dotRadius;
+        final Tesselate_SpatialGrid dotGrid;
+
+        int[] candU = new int[64], candV = new int[64];
+        int candCount;
+        int[] firstByU;
+        int[] conflictStart, conflicts;
+        int[] triangles = new int[64];
+        int triangleCount;
+
+        int[] pairs = new int[64];
+        int pairCount;
+        int[] stamp, degree;
+        int self;
+
+        int[] nearby = new int[16];
+        int nearbyCount;
+        int qu, qv;
+        double qx1, qy1, qx2, qy2;
+        int ta, tb, tc, turn;
+
+        Builder(Tesselate_Board board, double maxEdgeLength, double dotRadius, Tesselate_SpatialGrid dotGrid) {
+            this.board = board;
+            this.maxEdgeLength = maxEdgeLength;
+            this.dotRadius = dotRadius;
+            this.dotGrid = dotGrid;
+        }
+
+        void findCandidates() {
+            int n = board.size();
+            firstByU = new int[n + 1];
+            for (int a = 0; a < n; a++) {
+                firstByU[a] = candCount;
+                qu = a;
+                nearbyCount = 0;
+                dotGrid.queryAround(board.x(a), board.y(a), maxEdgeLength, this::collectNearby);
+                Arrays.sort(nearby, 0, nearbyCount);
+                for (int i = 0; i < nearbyCount; i++) {
+                    int b = nearby[i];
+                    if (board.distance(a, b) > maxEdgeLength) continue;
+                    setQuery(a, b);
+                    if (dotGrid.query(qx1, qy1, qx2, qy2, dotRadius, this::blocksSegment)) continue;
+                    if (candCount == candU.length) {
+                        candU = Arrays.copyOf(candU, candCount * 2);
+                        candV = Arrays.copyOf(candV, candCount * 2);
+                    }
+                    candU[candCount] = a;
+                    candV[candCount] = b;
+                    candCount++;
+                }
+            }
+            firstByU[n] = candCount;
+        }
+
+        void findConflicts() {
+            Tesselate_SpatialGrid segGrid = Tesselate_SpatialGrid.forBounds(board, maxEdgeLength / 4);
+            for (int c = 0; c < candCount; c++) {
+                segGrid.insertSegment(c, board.x(candU[c]), board.y(candU[c]), board.x(candV[c]), board.y(candV[c]));
+            }
+
+            // Each crossing pair is found once from its lower id; stamps drop repeat visits
+            stamp = new int[candCount];
+            Arrays.fill(stamp, -1);
+            degree = new int[candCount];
+            for (int c = 0; c < candCount; c++) {
+                self = c;
+                setQuery(candU[c], candV[c]);
+                segGrid.query(qx1, qy1, qx2, qy2, 0, this::collectConflict);
+            }
+
+            conflictStart = new int[candCount + 1];
+            for (int c = 0; c < candCount; c++) conflictStart[c + 1] = conflictStart[c] + degree[c];
+            conflicts = new int[conflictStart[candCount]];
+            int[] fill = Arrays.copyOf(conflictStart, candCount);
+            for (int i = 0; i < pairCount; i += 2) {
+                int c = pairs[i], d = pairs[i + 1];
+                conflicts[fill[c]++] = d;
+                conflicts[fill[d]++] = c;
+            }
+            // Sorted rows do not depend on grid visit order, and compress well
+            for (int c = 0; c < candCount; c++) Arrays.sort(conflicts, conflictStart[c], conflictStart[c + 1]);
+        }
+
+        // Each triangle once, from its lowest side (u, v) with third corner k > v
+        void findTriangles() {
+            int n = board.size();
+            int[] nbrStart = new int[n + 1];
+            for (int c = 0; c < candCount; c++) {
+                nbrStart[candU[c] + 1]++;
+                nbrStart[candV[c] + 1]++;
+            }
+            for (int i = 0; i < n; i++) nbrStart[i + 1] += nbrStart[i];
+            // Candidates come ordered by u then v, so every row fills in ascending order
+            int[] nbr = new int[nbrStart[n]];
+            int[] fill = Arrays.copyOf(nbrStart, n);
+            for (int c = 0; c < candCount; c++) {
+                nbr[fill[candU[c]]++] = candV[c];
+                nbr[fill[candV[c]]++] = candU[c];
+            }
+
+            for (int c = 0; c < candCount; c++) {
+                int u = candU[c], v = candV[c];
+                int i = nbrStart[u], iEnd = nbrStart[u + 1], j = nbrStart[v], jEnd = nbrStart[v + 1];
+                while (i < iEnd && j < jEnd) {
+                    int a = nbr[i], b = nbr[j];
+                    if (a < b) { i++; continue; }
+                    if (b < a) { j++; continue; }
+                    i++;
+                    j++;
+                    if (a <= v || !isEmpty(u, v, a)) continue;
+                    if (triangleCount + 2 > triangles.length) triangles = Arrays.copyOf(triangles, triangles.length * 2);
+                    triangles[triangleCount++] = c;
+                    triangles[triangleCount++] = a;
+                }
+            }
+        }
+
+        // No dot strictly inside triangle (a, b, c); only dots in its bounding box are looked at
+        boolean isEmpty(int a, int b, int c) {
+            ta = a;
+            tb = b;
+            tc = c;
+            turn = Tesselate_Geometry.orientation(board.x(a), board.y(a), board.x(b), board.y(b), board.x(c), board.y(c));
+            double x0 = Math.min(board.x(a), Math.min(board.x(b), board.x(c)));
+            double y0 = Math.min(board.y(a), Math.min(board.y(b), board.y(c)));
+            double x1 = Math.max(board.x(a), Math.max(board.x(b), board.x(c)));
+            double y1 = Math.max(board.y(a), Math.max(board.y(b), board.y(c)));
+            return !dotGrid.queryBox(x0, y0, x1, y1, this::insideTriangle);
+        }
+
+        boolean insideTriangle(int i) {
+            if (i == ta || i == tb || i == tc) return false;
+            double x = board.x(i), y = board.y(i);
+            return Tesselate_Geometry.orientation(board.x(ta), board.y(ta), board.x(tb), board.y(tb), x, y) == turn
+                    && Tesselate_Geometry.orientation(board.x(tb), board.y(tb), board.x(tc), board.y(tc), x, y) == turn
+                    && Tesselate_Geometry.orientation(board.x(tc), board.y(tc), board.x(ta), board.y(ta), x, y) == turn;
+        }
+
+        boolean collectConflict(int d) {
+            if (d <= self || stamp[d] == self) return false;
+            stamp[d] = self;
+            int u = candU[d], v = candV[d];
+            if (qu == u || qu == v || qv == u || qv == v) return false;
+            if (!Tesselate_Geometry.segmentsIntersect(qx1, qy1, qx2, qy2,
+                    board.x(u), board.y(u), board.x(v), board.y(v))) return false;
+            if (pairCount + 2 > pairs.length) pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            pairs[pairCount] = self;
+            pairs[pairCount + 1] = d;
+            pairCount += 2;
+            degree[self]++;
+            degree[d]++;
+            return false;
+        }
+
+        boolean collectNearby(int id) {
+            if (id > qu) {
+                if (nearbyCount == nearby.length) nearby = Arrays.copyOf(nearby, nearbyCount * 2);
+                nearby[nearbyCount++] = id;
+            }
+            return false;
+        }
+
+        // A dot other than the endpoints within dotRadius of the segment blocks it
+        boolean blocksSegment(int i) {
+            if (i == qu || i == qv) return false;
+            return Tesselate_Geometry.distanceToSegment(board.x(i), board.y(i), qx1, qy1, qx2, qy2) <= dotRadius;
+        }
+
+        void setQuery(int u, int v) {
+            qu = u;
+            qv = v;
+            qx1 = board.x(u);
+            qy1 = board.y(u);
+            qx2 = board.x(v);
+            qy2 = board.y(v);
+        }
+    }
+}
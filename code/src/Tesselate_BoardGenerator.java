@@ -0,0 +1,189 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded random boards of any size, as an alternative to the ten patterns.
+ *
+ * Dots come from a jittered grid: the area is cut into about one cell per
+ * dot, cells are visited in a shuffled order and each gets one dot at a
+ * random spot inside it. A dot is only kept if it is at least
+ * {@link #MIN_SPACING} from every other dot and is not collinear with any
+ * two dots it could form a triangle with (all three within
+ * {@link Tesselate_Engine#MAX_EDGE_LENGTH} of each other). Cells that
+ * reject a dot get a few more tries, so a board comes out with exactly the
+ * requested count. All lookups go through a spatial grid, so a board of
+ * 10k dots takes well under a second.
+ *
+ * The same count, area and seed always give the same board.
+ */
+public final class Tesselate_BoardGenerator {
+
+    /** Closest two dots may be; keeps them apart on screen and easy to click. */
+    public static final double MIN_SPACING = 4 * Tesselate_Engine.DOT_RADIUS;
+
+    // Average dot distance below which the collinearity rule rejects too many dots to fill a board
+    private static final double MIN_CELL = 2.5 * MIN_SPACING;
+
+    // A dot this close to the line through two others counts as on it
+    private static final double COLLINEAR_TOLERANCE = 0.5;
+
+    private static final double JITTER = 0.9; // fraction of a cell a dot may land in, centred
+    private static final int ATTEMPTS = 12;    // tries per cell in the first pass
+    private static final int PASSES = 4;       // passes over still-empty cells, with more tries each
+
+    private final double maxEdge = Tesselate_Engine.MAX_EDGE_LENGTH;
+    private final double[] xs, ys;
+    private final Tesselate_SpatialGrid grid;
+    private int n;
+
+    // Neighbours of the dot under test, reused between tests
+    private int[] near = new int[64];
+    private double[] nearDist = new double[64];
+    private long[] byAngle = new long[64];
+    private int nearCount;
+    private double px, py;
+
+    private Tesselate_BoardGenerator(int count, double minX, double minY, double width, double height) {
+        xs = new double[count];
+        ys = new double[count];
+        grid = new Tesselate_SpatialGrid(minX, minY, minX + width, minY + height, maxEdge / 2);
+    }
+
+    /** Number of dots that gives an average spacing of about {@code spacing} in the area. */
+    public static int countFor(double width, double height, double spacing) {
+        return Math.max(3, (int) (width * height / (spacing * spacing)));
+    }
+
+    /** Largest count {@link #generate} accepts for the area. */
+    public static int maxCount(double width, double height) {
+        return (int) (width * height / (MIN_CELL * MIN_CELL));
+    }
+
+    /**
+     * Board with {@code count} dots inside the rectangle at (minX, minY).
+     *
+     * @throws IllegalArgumentException if the area cannot hold that many dots
+     * @throws IllegalStateException if sampling could not place every dot
+     */
+    public static Tesselate_Board generate(int count, double minX, double minY, double width, double height,
+                                           long seed) {
+        if (count < 1 || count > maxCount(width, height) || count > Tesselate_Engine.MAX_DOTS) {
+            throw new IllegalArgumentException(count + " dots do not fit in " + width + " x " + height);
+        }
+        return new Tesselate_BoardGenerator(count, minX, minY, width, height)
+                .sample(count, minX, minY, width, height, new SplittableRandom(seed));
+    }
+
+    private Tesselate_Board sample(int count, double minX, double minY, double width, double height,
+                                   SplittableRandom rnd) {
+        // Square cells, at least one per dot
+        double cell = Math.sqrt(width * height / count);
+        int cols = Math.max(1, (int) (width / cell));
+        int rows = Math.max(1, (int) (height / cell));
+        while (cols * rows < count) {
+            if (width / cols > height / rows) cols++;
+            else rows++;
+        }
+        double cw = width / cols, ch = height / rows;
+
+        int[] order = new int[cols * rows];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+
+        boolean[] filled = new boolean[order.length];
+        for (int pass = 0; pass < PASSES && n < count; pass++) {
+            int attempts = ATTEMPTS << (2 * pass);
+            for (int k = 0; k < order.length && n < count; k++) {
+                int c = order[k];
+                if (filled[c]) continue;
+                double x0 = minX + (c % cols) * cw, y0 = minY + (c / cols) * ch;
+                for (int a = 0; a < attempts; a++) {
+                    double x = x0 + cw * (0.5 + JITTER * (rnd.nextDouble() - 0.5));
+                    double y = y0 + ch * (0.5 + JITTER * (rnd.nextDouble() - 0.5));
+                    if (accepts(x, y)) {
+                        grid.insertPoint(n, x, y);
+                        xs[n] = x;
+                        ys[n] = y;
+                        n++;
+                        filled[c] = true;
+                        break;
+                    }
+                }
+            }
+        }
+        if (n < count) throw new IllegalStateException("placed only " + n + " of " + count + " dots");
+
+        Tesselate_Board.Builder board = new Tesselate_Board.Builder();
+        for (int i = 0; i < n; i++) board.add(xs[i], ys[i]);
+        return board.build(-1);
+    }
+
+    // True if a dot at (x, y) keeps the spacing and non-collinearity rules
+    private boolean accepts(double x, double y) {
+        px = x;
+        py = y;
+        nearCount = 0;
+        if (grid.queryAround(x, y, maxEdge, this::collectNear)) return false; // too close to a dot
+        if (nearCount < 2) return true;
+
+        // Sort the neighbours by the angle of the line from the new dot to them (mod pi).
+        // Three dots can only be collinear if two of them are close in this order.
+        for (int i = 0; i < nearCount; i++) {
+            double angle = Math.atan2(ys[near[i]] - y, xs[near[i]] - x);
+            if (angle < 0) angle += Math.PI;
+            if (angle >= Math.PI) angle -= Math.PI;
+            byAngle[i] = ((long) (angle / Math.PI * (1L << 31)) << 32) | i;
+        }
+        Arrays.sort(byAngle, 0, nearCount);
+
+        double spacingSlack = Math.asin(Math.min(1, COLLINEAR_TOLERANCE / MIN_SPACING));
+        for (int i = 0; i < nearCount; i++) {
+            int a = (int) byAngle[i];
+            double angleA = angleOf(byAngle[i]);
+            // Widest angle between the two lines of a collinear triple that involves a
+            double window = Math.asin(Math.min(1, COLLINEAR_TOLERANCE / nearDist[a])) + spacingSlack;
+            for (int step = 1; step < nearCount; step++) {
+                long entry = byAngle[(i + step) % nearCount];
+                double diff = angleOf(entry) - angleA;
+                if (diff < 0) diff += Math.PI;
+                if (diff > window) break;
+                if (collinear(near[a], near[(int) entry])) return false;
+            }
+        }
+        return true;
+    }
+
+    private static double angleOf(long entry) {
+        return (entry >>> 32) * Math.PI / (1L << 31);
+    }
+
+    // Keeps dots within edge reach of (px, py); stops the walk if one is too close
+    private boolean collectNear(int id) {
+        double d = Math.hypot(xs[id] - px, ys[id] - py);
+        if (d < MIN_SPACING) return true;
+        if (d > maxEdge) return false;
+        if (nearCount == near.length) {
+            near = Arrays.copyOf(near, nearCount * 2);
+            nearDist = Arrays.copyOf(nearDist, nearCount * 2);
+            byAngle = Arrays.copyOf(byAngle, nearCount * 2);
+        }
+        near[nearCount] = id;
+        nearDist[nearCount] = d;
+        nearCount++;
+        return false;
+    }
+
+    // Whether the new dot and dots a and b lie on one line, with all three within edge reach
+    private boolean collinear(int a, int b) {
+        double ax = xs[a], ay = ys[a], bx = xs[b], by = ys[b];
+        if (Math.hypot(bx - ax, by - ay) > maxEdge) return false;
+        return Tesselate_Geometry.distanceToSegment(px, py, ax, ay, bx, by) <= COLLINEAR_TOLERANCE
+                || Tesselate_Geometry.distanceToSegment(ax, ay, px, py, bx, by) <= COLLINEAR_TOLERANCE
+                || Tesselate_Geometry.distanceToSegment(bx, by, px, py, ax, ay) <= COLLINEAR_TOLERANCE;
+    }
+}
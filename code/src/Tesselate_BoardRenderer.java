@@ -0,0 +1,494 @@
+import javafx.animation.PauseTransition;
+import javafx.scene.Cursor;
+import javafx.scene.Group;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.effect.BlurType;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.effect.Effect;
+import javafx.scene.effect.InnerShadow;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Paint;
+import javafx.scene.paint.RadialGradient;
+import javafx.scene.paint.Stop;
+import javafx.scene.transform.Affine;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+import java.util.Arrays;
+
+/**
+ * Draws the board on four stacked canvases: triangles, edges, dots, and
+ * on top the hover and selection highlights with the drag line and any
+ * hinted edges.
+ *
+ * A move only paints its new edge and triangles onto the matching canvas,
+ * so drawing costs the same on an empty board and a full one and nothing
+ * is ever reordered. Pointer feedback repaints just the thin top layer.
+ * The paints and effects copy the dot, edge-* and tri-fill-* rules of the
+ * stylesheet. Every drawn item is also logged, so the canvases can be
+ * repainted when they need a finer raster. Undo pops the newest items
+ * and repaints only the rectangle they covered.
+ *
+ * Painting is done in board units: the canvases hold the board's frame
+ * (the board area plus any dots outside it) at a fixed number of pixels
+ * per unit, and one {@link Affine} on their group fits that frame into
+ * the pane. Resizing the window only updates the affine; once the size
+ * has settled, and only if the raster became too coarse or needlessly
+ * fine for the new scale and the screen's output scale, the canvases are
+ * repainted at the matching resolution.
+ *
+ * There are no per-dot nodes or handlers: {@link #dotAt} finds the dot
+ * under the pointer through the board's dot grid, within a snap radius
+ * in screen pixels that may be larger than the dot itself.
+ */
+public final class Tesselate_BoardRenderer {
+
+    private static final Style RED = new Style(
+            gradientStroke("#ff6b6b", "#ee5a6f"), shadow(255, 107, 107),
+            triangleFill(255, 107, 107, 238, 90, 111), Color.web("#ff6b6b"), innerShadow(255, 107, 107));
+    private static final Style BLUE = new Style(
+            gradientStroke("#4ecdc4", "#44a3c2"), shadow(78, 205, 196),
+            triangleFill(78, 205, 196, 68, 163, 194), Color.web("#4ecdc4"), innerShadow(78, 205, 196));
+
+    private static final double EDGE_WIDTH = 3.5;
+    private static final double EDGE_OPACITY = 0.95;
+    private static final double TRIANGLE_STROKE_WIDTH = 2.5;
+    private static final double EFFECT_MARGIN = 24; // covers the widest shadow plus half a stroke
+
+    private static final DotStyle DOT = new DotStyle(dotFill(200, 220, 255, 0.9), Color.web("#667eea"), 2,
+            new DropShadow(BlurType.GAUSSIAN, Color.rgb(102, 126, 234, 0.4), 6, 0.5, 0, 0));
+    private static final DotStyle DOT_HOVER = new DotStyle(dotFill(255, 240, 150, 1.0), Color.web("#667eea"), 2,
+            new DropShadow(BlurType.GAUSSIAN, Color.rgb(255, 200, 0, 0.5), 8, 0.6, 0, 0));
+    private static final DotStyle DOT_SELECTED = new DotStyle(
+            new RadialGradient(0, 0, 0.5, 0.5, 1, true, CycleMethod.NO_CYCLE,
+                    new Stop(0, Color.rgb(255, 200, 50)), new Stop(1, Color.rgb(255, 150, 0))),
+            Color.web("#ff9800"), 2.5,
+            new DropShadow(BlurType.GAUSSIAN, Color.rgb(255, 152, 0, 0.6), 10, 0.7, 0, 0));
+    private static final Color DRAG_LINE = Color.rgb(255, 152, 0, 0.8);
+    private static final Color HINT_LINE = Color.rgb(255, 213, 79, 0.85);
+    private static final double HINT_WIDTH = 1.5; // per triangle the edge would close
+
+    /** Default distance in screen pixels from a dot's centre within which the pointer picks it. */
+    public static final double DEFAULT_SNAP_RADIUS = 3 * Tesselate_Engine.DOT_RADIUS;
+
+    private static final double FRAME_MARGIN = 3 * Tesselate_Engine.DOT_RADIUS; // board units around the dots
+    private static final double MAX_CANVAS = 8192;           // pixels per canvas side; textures stay in range
+    private static final double RESOLUTION_SLACK = 1.25;     // raster may be this much too coarse or fine
+    private static final Duration RASTER_DELAY = Duration.millis(200);
+
+    private final Pane host;
+    private final Canvas triangleLayer = new Canvas();
+    private final Canvas edgeLayer = new Canvas();
+    private final Canvas dotLayer = new Canvas();
+    private final Canvas pointerLayer = new Canvas();
+    private final Canvas[] layers = {triangleLayer, edgeLayer, dotLayer, pointerLayer};
+
+    // Canvas pixels -> pane; the only thing a resize changes at once
+    private final Affine view = new Affine();
+    private final PauseTransition rasterLater = new PauseTransition(RASTER_DELAY);
+
+    // Board units shown (frameX, frameY, frameW x frameH), rasterised at resolution pixels per unit
+    private double frameX, frameY, frameW = Tesselate_Board.WIDTH, frameH = Tesselate_Board.HEIGHT;
+    private double resolution = 1;
+    // Pane pixels per board unit, and where the frame's corner sits in the pane
+    private double scale = 1, offsetX, offsetY;
+
+    private Tesselate_Board board;
+    private Tesselate_SpatialGrid dotGrid;
+    private double snapRadius = DEFAULT_SNAP_RADIUS;
+
+    // Pointer feedback; -1 when unset
+    private int hover = -1;
+    private int selected = -1;
+    private int dragFrom = -1;
+    private double dragX, dragY;
+    private int[] hints; // (a, b, triangles) per hinted edge, or null
+
+    // Nearest-dot query state for the grid visitor
+    private double pickX, pickY, pickBest;
+    private int pickDot;
+    private final Tesselate_SpatialGrid.Visitor pickVisitor = this::considerDot;
+
+    // Everything drawn so far, in order, for repaints: (u, v, owner) and (a, b, c, owner)
+    private int[] edgeLog = new int[96];
+    private int edgeLogSize;
+    private int[] triangleLog = new int[64];
+    private int triangleLogSize;
+
+    public Tesselate_BoardRenderer(Pane host) {
+        this.host = host;
+        Group stack = new Group(layers);
+        stack.setMouseTransparent(true);
+        stack.setManaged(false);
+        stack.getTransforms().add(view);
+        host.widthProperty().addListener((obs, oldVal, newVal) -> fit());
+        host.heightProperty().addListener((obs, oldVal, newVal) -> fit());
+        rasterLater.setOnFinished(e -> rasterise(wantedResolution()));
+        host.getChildren().setAll(stack);
+        rasterise(1);
+    }
+
+    /** Clears the layers and shows the dots of a new board. */
+    public void reset(Tesselate_BoardAnalysis analysis) {
+        this.board = analysis.board();
+        this.dotGrid = analysis.dotGrid();
+        edgeLogSize = 0;
+        triangleLogSize = 0;
+        hover = selected = dragFrom = -1;
+        hints = null;
+
+        // The board area, grown to take in any dot of the layout outside it
+        double x0 = 0, y0 = 0, x1 = Tesselate_Board.WIDTH, y1 = Tesselate_Board.HEIGHT;
+        for (int i = 0; i < board.size(); i++) {
+            x0 = Math.min(x0, board.x(i) - FRAME_MARGIN);
+            y0 = Math.min(y0, board.y(i) - FRAME_MARGIN);
+            x1 = Math.max(x1, board.x(i) + FRAME_MARGIN);
+            y1 = Math.max(y1, board.y(i) + FRAME_MARGIN);
+        }
+        frameX = x0;
+        frameY = y0;
+        frameW = x1 - x0;
+        frameH = y1 - y0;
+        fit();
+        rasterise(wantedResolution());
+    }
+
+    /** Sets how far from a dot's centre, in screen pixels, the pointer still picks it. */
+    public void setSnapRadius(double snapRadius) {
+        this.snapRadius = snapRadius;
+    }
+
+    /** Dot nearest to pane point (x, y) within the snap radius, or -1. */
+    public int dotAt(double x, double y) {
+        if (board == null) return -1;
+        pickX = boardX(x);
+        pickY = boardY(y);
+        double r = snapRadius / scale;
+        pickBest = r * r;
+        pickDot = -1;
+        dotGrid.queryAround(pickX, pickY, r, pickVisitor);
+        return pickDot;
+    }
+
+    // Pane pixels to board units
+    private double boardX(double x) { return frameX + (x - offsetX) / scale; }
+    private double boardY(double y) { return frameY + (y - offsetY) / scale; }
+
+    // Fits the frame into the pane, centred, by updating the view transform alone
+    private void fit() {
+        double w = host.getWidth(), h = host.getHeight();
+        if (w <= 0 || h <= 0) return;
+        scale = Math.min(w / frameW, h / frameH);
+        offsetX = (w - frameW * scale) / 2;
+        offsetY = (h - frameH * scale) / 2;
+        double k = scale / resolution;
+        view.setToTransform(k, 0, offsetX, 0, k, offsetY);
+        double wanted = wantedResolution();
+        if (wanted > resolution * RESOLUTION_SLACK || wanted * RESOLUTION_SLACK < resolution) {
+            rasterLater.playFromStart();
+        }
+    }
+
+    // Canvas pixels per board unit that match the screen at the current scale
+    private double wantedResolution() {
+        Window window = host.getScene() == null ? null : host.getScene().getWindow();
+        double output = window == null ? 1 : Math.max(window.getOutputScaleX(), window.getOutputScaleY());
+        return Math.min(scale * output, MAX_CANVAS / Math.max(frameW, frameH));
+    }
+
+    // Resizes the canvases to the frame at the given resolution and repaints them
+    private void rasterise(double resolution) {
+        rasterLater.stop();
+        this.resolution = resolution;
+        for (Canvas layer : layers) {
+            layer.setWidth(Math.ceil(frameW * resolution));
+            layer.setHeight(Math.ceil(frameH * resolution));
+            layer.getGraphicsContext2D().setTransform(resolution, 0, 0, resolution,
+                    -frameX * resolution, -frameY * resolution);
+        }
+        double k = scale / resolution;
+        view.setToTransform(k, 0, offsetX, 0, k, offsetY);
+        repaint();
+    }
+
+    private boolean considerDot(int i) {
+        double dx = board.x(i) - pickX, dy = board.y(i) - pickY;
+        double d2 = dx * dx + dy * dy;
+        if (d2 <= pickBest) {
+            pickBest = d2;
+            pickDot = i;
+        }
+        return false;
+    }
+
+    public void addEdge(int u, int v, Tesselate_Engine.Player owner) {
+        if (edgeLogSize + 3 > edgeLog.length) edgeLog = Arrays.copyOf(edgeLog, edgeLog.length * 2);
+        edgeLog[edgeLogSize++] = u;
+        edgeLog[edgeLogSize++] = v;
+        edgeLog[edgeLogSize++] = owner.ordinal();
+        paintEdge(u, v, owner);
+    }
+
+    public void addTriangle(int a, int b, int c, Tesselate_Engine.Player owner) {
+        if (triangleLogSize + 4 > triangleLog.length) {
+            triangleLog = Arrays.copyOf(triangleLog, triangleLog.length * 2);
+        }
+        triangleLog[triangleLogSize++] = a;
+        triangleLog[triangleLogSize++] = b;
+        triangleLog[triangleLogSize++] = c;
+        triangleLog[triangleLogSize++] = owner.ordinal();
+        paintTriangle(a, b, c, owner);
+    }
+
+    /** Takes back the newest edge and repaints the area it covered. */
+    public void removeLastEdge() {
+        edgeLogSize -= 3;
+        int u = edgeLog[edgeLogSize], v = edgeLog[edgeLogSize + 1];
+        repaintArea(edgeLayer, Math.min(board.x(u), board.x(v)), Math.min(board.y(u), board.y(v)),
+                Math.max(board.x(u), board.x(v)), Math.max(board.y(u), board.y(v)));
+    }
+
+    /** Takes back the newest {@code count} triangles and repaints the area they covered. */
+    public void removeLastTriangles(int count) {
+        if (count == 0) return;
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            triangleLogSize -= 4;
+            for (int k = 0; k < 3; k++) {
+                int d = triangleLog[triangleLogSize + k];
+                x0 = Math.min(x0, board.x(d));
+                y0 = Math.min(y0, board.y(d));
+                x1 = Math.max(x1, board.x(d));
+                y1 = Math.max(y1, board.y(d));
+            }
+        }
+        repaintArea(triangleLayer, x0, y0, x1, y1);
+    }
+
+    /** Highlights one selected dot; -1 clears it. */
+    public void setSelected(int dot) {
+        if (dot == selected) return;
+        selected = dot;
+        paintPointer();
+    }
+
+    /** Highlights the dot under the pointer; -1 clears it. */
+    public void setHover(int dot) {
+        if (dot == hover) return;
+        hover = dot;
+        host.setCursor(dot >= 0 ? Cursor.HAND : Cursor.DEFAULT);
+        paintPointer();
+    }
+
+    /** Shows a line from dot {@code from} to pane point (x, y) while dragging; -1 hides it. */
+    public void setDrag(int from, double x, double y) {
+        dragFrom = from;
+        dragX = boardX(x);
+        dragY = boardY(y);
+        paintPointer();
+    }
+
+    /**
+     * Marks the edges that would complete triangles, as (a, b, triangles)
+     * triples; null clears them. Drawn on the pointer layer, thicker for
+     * more triangles.
+     */
+    public void setHints(int[] hints) {
+        if (hints == this.hints) return;
+        this.hints = hints;
+        paintPointer();
+    }
+
+    // Redraws every canvas from the logs, e.g. at a new resolution
+    private void repaint() {
+        clear(triangleLayer);
+        clear(edgeLayer);
+        clear(dotLayer);
+        paintPointer();
+        if (board == null) return;
+        for (int i = 0; i < board.size(); i++) paintDot(dotLayer, i, DOT);
+        Tesselate_Engine.Player[] players = Tesselate_Engine.Player.values();
+        for (int i = 0; i < triangleLogSize; i += 4) {
+            paintTriangle(triangleLog[i], triangleLog[i + 1], triangleLog[i + 2], players[triangleLog[i + 3]]);
+        }
+        for (int i = 0; i < edgeLogSize; i += 3) {
+            paintEdge(edgeLog[i], edgeLog[i + 1], players[edgeLog[i + 2]]);
+        }
+    }
+
+    // Clears the box (x0, y0)-(x1, y1) plus the effect margin and repaints the logged items touching it
+    private void repaintArea(Canvas layer, double x0, double y0, double x1, double y1) {
+        x0 -= EFFECT_MARGIN;
+        y0 -= EFFECT_MARGIN;
+        x1 += EFFECT_MARGIN;
+        y1 += EFFECT_MARGIN;
+        GraphicsContext g = layer.getGraphicsContext2D();
+        g.save();
+        g.beginPath();
+        g.rect(x0, y0, x1 - x0, y1 - y0);
+        g.clip();
+        g.clearRect(x0, y0, x1 - x0, y1 - y0);
+        Tesselate_Engine.Player[] players = Tesselate_Engine.Player.values();
+        if (layer == edgeLayer) {
+            for (int i = 0; i < edgeLogSize; i += 3) {
+                int u = edgeLog[i], v = edgeLog[i + 1];
+                if (touches(x0, y0, x1, y1, u, v, v)) paintEdge(u, v, players[edgeLog[i + 2]]);
+            }
+        } else {
+            for (int i = 0; i < triangleLogSize; i += 4) {
+                int a = triangleLog[i], b = triangleLog[i + 1], c = triangleLog[i + 2];
+                if (touches(x0, y0, x1, y1, a, b, c)) paintTriangle(a, b, c, players[triangleLog[i + 3]]);
+            }
+        }
+        g.restore();
+    }
+
+    // Whether the bounding box of dots a, b, c, widened by the effect margin, meets the box
+    private boolean touches(double x0, double y0, double x1, double y1, int a, int b, int c) {
+        double minX = Math.min(board.x(a), Math.min(board.x(b), board.x(c))) - EFFECT_MARGIN;
+        double maxX = Math.max(board.x(a), Math.max(board.x(b), board.x(c))) + EFFECT_MARGIN;
+        double minY = Math.min(board.y(a), Math.min(board.y(b), board.y(c))) - EFFECT_MARGIN;
+        double maxY = Math.max(board.y(a), Math.max(board.y(b), board.y(c))) + EFFECT_MARGIN;
+        return maxX >= x0 && minX <= x1 && maxY >= y0 && minY <= y1;
+    }
+
+    private void paintEdge(int u, int v, Tesselate_Engine.Player owner) {
+        Style s = style(owner);
+        GraphicsContext g = edgeLayer.getGraphicsContext2D();
+        g.save();
+        g.setGlobalAlpha(EDGE_OPACITY);
+        g.setEffect(s.edgeShadow);
+        g.setStroke(s.edgeStroke);
+        g.setLineWidth(EDGE_WIDTH);
+        g.strokeLine(board.x(u), board.y(u), board.x(v), board.y(v));
+        g.restore();
+    }
+
+    private void paintTriangle(int a, int b, int c, Tesselate_Engine.Player owner) {
+        Style s = style(owner);
+        double[] xs = {board.x(a), board.x(b), board.x(c)};
+        double[] ys = {board.y(a), board.y(b), board.y(c)};
+        GraphicsContext g = triangleLayer.getGraphicsContext2D();
+        g.save();
+        g.setEffect(s.triangleShadow);
+        g.setFill(s.triangleFill);
+        g.fillPolygon(xs, ys, 3);
+        g.setStroke(s.triangleStroke);
+        g.setLineWidth(TRIANGLE_STROKE_WIDTH);
+        g.strokePolygon(xs, ys, 3);
+        g.restore();
+    }
+
+    private void paintPointer() {
+        clear(pointerLayer);
+        if (board == null) return;
+        if (hints != null && hints.length > 0) {
+            GraphicsContext g = pointerLayer.getGraphicsContext2D();
+            g.setStroke(HINT_LINE);
+            g.setLineDashes(3, 5);
+            for (int i = 0; i < hints.length; i += 3) {
+                int a = hints[i], b = hints[i + 1];
+                g.setLineWidth(HINT_WIDTH * hints[i + 2]);
+                g.strokeLine(board.x(a), board.y(a), board.x(b), board.y(b));
+            }
+            g.setLineDashes(null);
+        }
+        if (dragFrom >= 0) {
+            GraphicsContext g = pointerLayer.getGraphicsContext2D();
+            g.setStroke(DRAG_LINE);
+            g.setLineWidth(2);
+            g.setLineDashes(6, 6);
+            g.strokeLine(board.x(dragFrom), board.y(dragFrom), dragX, dragY);
+            g.setLineDashes(null);
+        }
+        if (hover >= 0 && hover != selected) paintDot(pointerLayer, hover, DOT_HOVER);
+        if (selected >= 0) paintDot(pointerLayer, selected, DOT_SELECTED);
+    }
+
+    private void paintDot(Canvas layer, int i, DotStyle s) {
+        double r = Tesselate_Engine.DOT_RADIUS;
+        GraphicsContext g = layer.getGraphicsContext2D();
+        g.save();
+        g.setEffect(s.shadow);
+        g.setFill(s.fill);
+        g.fillOval(board.x(i) - r, board.y(i) - r, 2 * r, 2 * r);
+        g.setEffect(null);
+        g.setStroke(s.stroke);
+        g.setLineWidth(s.strokeWidth);
+        g.strokeOval(board.x(i) - r, board.y(i) - r, 2 * r, 2 * r);
+        g.restore();
+    }
+
+    private void clear(Canvas layer) {
+        layer.getGraphicsContext2D().clearRect(frameX, frameY, frameW, frameH);
+    }
+
+    private static Style style(Tesselate_Engine.Player owner) {
+        return owner == Tesselate_Engine.Player.RED ? RED : BLUE;
+    }
+
+    // linear-gradient(from 0% 0% to 100% 100%, ...)
+    private static Paint gradientStroke(String from, String to) {
+        return new LinearGradient(0, 0, 1, 1, true, CycleMethod.NO_CYCLE,
+                new Stop(0, Color.web(from)), new Stop(1, Color.web(to)));
+    }
+
+    // dropshadow(gaussian, rgba(r, g, b, 0.9), 15, 0.8, 0, 0)
+    private static Effect shadow(int r, int g, int b) {
+        return new DropShadow(BlurType.GAUSSIAN, Color.rgb(r, g, b, 0.9), 15, 0.8, 0, 0);
+    }
+
+    // radial-gradient(center 50% 50%, radius 100%, rgba(.., 0.35), rgba(.., 0.25))
+    private static Paint triangleFill(int r1, int g1, int b1, int r2, int g2, int b2) {
+        return new RadialGradient(0, 0, 0.5, 0.5, 1, true, CycleMethod.NO_CYCLE,
+                new Stop(0, Color.rgb(r1, g1, b1, 0.35)), new Stop(1, Color.rgb(r2, g2, b2, 0.25)));
+    }
+
+    // innershadow(gaussian, rgba(r, g, b, 0.6), 20, 0.5, 0, 0)
+    private static Effect innerShadow(int r, int g, int b) {
+        return new InnerShadow(BlurType.GAUSSIAN, Color.rgb(r, g, b, 0.6), 20, 0.5, 0, 0);
+    }
+
+    // radial-gradient(center 50% 50%, radius 100%, rgba(255, 255, 255, 1.0), rgba(r, g, b, a))
+    private static Paint dotFill(int r, int g, int b, double a) {
+        return new RadialGradient(0, 0, 0.5, 0.5, 1, true, CycleMethod.NO_CYCLE,
+                new Stop(0, Color.WHITE), new Stop(1, Color.rgb(r, g, b, a)));
+    }
+
+    /** Paints for one dot state, matching the .dot rules of the stylesheet. */
+    private static final class DotStyle {
+        final Paint fill;
+        final Paint stroke;
+        final double strokeWidth;
+        final Effect shadow;
+
+        DotStyle(Paint fill, Paint stroke, double strokeWidth, Effect shadow) {
+            this.fill = fill;
+            this.stroke = stroke;
+            this.strokeWidth = strokeWidth;
+            this.shadow = shadow;
+        }
+    }
+
+    /** Paints for one player, matching the stylesheet. */
+    private static final class Style {
+        final Paint edgeStroke;
+        final Effect edgeShadow;
+        final Paint triangleFill;
+        final Paint triangleStroke;
+        final Effect triangleShadow;
+
+        Style(Paint edgeStroke, Effect edgeShadow, Paint triangleFill, Paint triangleStroke, Effect triangleShadow) {
+            this.edgeStroke = edgeStroke;
+            this.edgeShadow = edgeShadow;
+            this.triangleFill = triangleFill;
+            this.triangleStroke = triangleStroke;
+            this.triangleShadow = triangleShadow;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offline tool that writes the opening book for the built-in patterns.
+ *
+ * For every pattern and every roll, the searcher plays out the opening
+ * turn edge by edge and each position it meets is stored with its chosen
+ * edge. From the end of each book turn the tool goes on to all six rolls
+ * of the next turn, up to the requested number of turns.
+ *
+ * That line only helps a player whose opponent follows the book, and in
+ * the window only BLUE is a bot. So BLUE's first turn is also searched
+ * after every RED first turn of up to {@code red edges} edges: each set of
+ * non-crossing edges RED can draw with that roll is met once, and BLUE's
+ * whole turn is stored for each of the six rolls, which is 21 positions
+ * per RED turn. With the default of 1 that is every legal single edge,
+ * about 1,300 over the ten patterns, so about 27,000 BLUE positions and a
+ * book of about 1 MB; 2 adds every non-crossing pair, about 91,000 more
+ * RED turns and 1.9 million BLUE positions, with as many searches.
+ *
+ * Every turn line and every BLUE reply is an independent task on a pool
+ * with one thread per core; each thread searches single-threaded with a
+ * table of its own.
+ *
+ * Usage: java Tesselate_BookBuilder [book file] [turns] [millis per edge] [max depth] [red edges]
+ */
+public final class Tesselate_BookBuilder {
+
+    private static final double CENTER_X = Tesselate_Board.WIDTH / 2, CENTER_Y = Tesselate_Board.HEIGHT / 2;
+
+    private final int turns;
+    private final ThreadLocal<Tesselate_ExpectiminimaxBot> bots;
+    private final ConcurrentHashMap<Long, Long> book = new ConcurrentHashMap<>();
+    private final AtomicInteger searched = new AtomicInteger();
+
+    private Tesselate_BookBuilder(int turns, long millisPerEdge, int maxDepth) {
+        this.turns = turns;
+        this.bots = ThreadLocal.withInitial(() -> new Tesselate_ExpectiminimaxBot(millisPerEdge, maxDepth, 1, 18));
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path out = Path.of(args.length > 0 ? args[0] : "tessellate.book");
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 1_000;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : Tesselate_Bot.Difficulty.HARD.depth;
+        int redEdges = Math.min(6, args.length > 4 ? Integer.parseInt(args[4]) : 1);
+
+        Tesselate_BookBuilder builder = new Tesselate_BookBuilder(turns, millis, depth);
+        long start = System.nanoTime();
+        List<RecursiveAction> roots = new ArrayList<>();
+        for (int p = 0; p < Tesselate_Patterns.COUNT; p++) {
+            Tesselate_Engine e = new Tesselate_Engine(Tesselate_Patterns.create(p, CENTER_X, CENTER_Y), p);
+            for (int face = 1; face <= 6; face++) {
+                roots.add(builder.new Turn(e, face, 1));
+            }
+            for (int face = 1; face <= redEdges; face++) {
+                Tesselate_Engine red = e.copy();
+                red.applyRoll(face);
+                for (int i = 0; i < red.legalMoveCount(); i++) {
+                    roots.add(builder.new Replies(red, red.legalMove(i)));
+                }
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(roots);
+            }
+        });
+        pool.shutdown();
+
+        builder.write(out);
+        System.out.println("Wrote " + builder.book.size() + " positions from " + builder.searched.get()
+                + " searches to " + out + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private void write(Path out) throws IOException {
+        int n = book.size();
+        long[] keys = new long[n];
+        int[] us = new int[n], vs = new int[n];
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : book.entrySet()) {
+            keys[i] = entry.getKey();
+            us[i] = Tesselate_Engine.edgeU(entry.getValue());
+            vs[i] = Tesselate_Engine.edgeV(entry.getValue());
+            i++;
+        }
+        Tesselate_OpeningBook.write(out, keys, us, vs, n);
+    }
+
+    /** Plays one turn from a position with a given roll, then forks the next turn's rolls. */
+    private final class Turn extends RecursiveAction {
+        private final Tesselate_Engine start;
+        private final int face;
+        private final int turn;
+
+        Turn(Tesselate_Engine start, int face, int turn) {
+            this.start = start;
+            this.face = face;
+            this.turn = turn;
+        }
+
+        @Override
+        protected void compute() {
+            Tesselate_Engine s = start.copy();
+            s.applyRoll(face);
+            Tesselate_ExpectiminimaxBot bot = bots.get();
+            int pattern = s.board().pattern();
+            while (s.edgesRemaining() > 0 && !s.isGameOver()) {
+                int c = bot.chooseMove(s);
+                searched.incrementAndGet();
+                long edge = Tesselate_Engine.edgeKey(s.analysis().candidateU(c), s.analysis().candidateV(c));
+                book.put(Tesselate_OpeningBook.key(pattern, s.hash()), edge);
+                s.applyCandidate(c);
+            }
+            if (turn < turns && !s.isGameOver()) {
+                List<Turn> next = new ArrayList<>(6);
+                for (int f = 1; f <= 6; f++) next.add(new Turn(s, f, turn + 1));
+                invokeAll(next);
+            }
+        }
+    }
+
+    /**
+     * BLUE's first turn, for all six rolls, after every RED first turn that
+     * starts with edge {@code first}; {@code start} has RED's roll applied.
+     */
+    private final class Replies extends RecursiveAction {
+        private final Tesselate_Engine start;
+        private final int first;
+
+        Replies(Tesselate_Engine start, int first) {
+            this.start = start;
+            this.first = first;
+        }
+
+        @Override
+        protected void compute() {
+            Tesselate_Engine s = start.copy();
+            s.applyCandidate(first);
+            expand(s, first);
+        }
+
+        // RED's later edges in ascending id order, so each set of edges is met once
+        private void expand(Tesselate_Engine s, int after) {
+            if (s.isGameOver()) return;
+            if (s.edgesRemaining() == 0) {
+                List<Turn> replies = new ArrayList<>(6);
+                for (int f = 1; f <= 6; f++) replies.add(new Turn(s, f, turns));
+                invokeAll(replies);
+                return;
+            }
+            Tesselate_BoardAnalysis analysis = s.analysis();
+            for (int c = after + 1; c < analysis.candidateCount(); c++) {
+                if (!s.isLegal(analysis.candidateU(c), analysis.candidateV(c))) continue;
+                s.applyCandidate(c);
+                expand(s, c);
+                s.undo();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * A computer player. Bots read a position and answer with one edge; they
+ * never change the engine they are given, so callers can hand over the live
+ * game state or a copy of it.
+ */
+public interface Tesselate_Bot {
+
+    /**
+     * Thinking budget: a hard time limit, plus a cap on simulated games for
+     * sampling bots and on search depth (in edges) for tree searchers.
+     */
+    enum Difficulty {
+        EASY(150, 1_500, 2),
+        MEDIUM(700, 25_000, 4),
+        HARD(2_500, 400_000, 64);
+
+        public final long timeMillis;
+        public final int playouts;
+        public final int depth;
+
+        Difficulty(long timeMillis, int playouts, int depth) {
+            this.timeMillis = timeMillis;
+            this.playouts = playouts;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Picks the next edge for the player to move, as a candidate id of
+     * {@code state.analysis()}. The state must be mid-turn (edges remaining)
+     * and not over.
+     */
+    int chooseMove(Tesselate_Engine state);
+}
@@ -0,0 +1,736 @@
+import java.util.Arrays;
+
+/**
+ * Headless rules engine. Holds the whole game state and knows nothing about
+ * JavaFX, so bots, batch runs and tests can play games without a toolkit.
+ *
+ * Rules:
+ * - Two players alternate turns: RED then BLUE.
+ * - A turn starts with a dice roll giving 1..6 edges.
+ * - An edge joins two different dots; it may not be longer than the
+ *   maximum edge length, cross an existing edge or pass through a dot.
+ * - If an edge completes any triangle(s), they are scored immediately:
+ *   RED triangles = 2 pts each; BLUE triangles = 1 pt each.
+ * - A triangle with a dot inside it does not count, and neither does one
+ *   overlapping a claimed triangle; the second follows from the first,
+ *   since edges never cross (see {@link Tesselate_BoardAnalysis}).
+ * - Triangles are claimed once; no double scoring.
+ * - The game is over when no edge can be drawn any more.
+ *
+ * Edges are only ever drawn between candidates of the board's
+ * {@link Tesselate_BoardAnalysis}; the engine keeps the set of candidates
+ * that are still playable and drops the ones a new edge crosses.
+ *
+ * For every candidate the engine also keeps how many triangles it would
+ * close if drawn now, updated in O(degree) per move, and a bitset of the
+ * playable candidates that would close at least one ("threats"). Hints
+ * and greedy move ordering read them instead of scanning every move.
+ *
+ * Every roll and move also leaves a small delta in an undo journal: the
+ * candidates it dropped and the turn state it replaced. {@link #undo()}
+ * plays one back in O(dropped + triangles on the edge), so searches can
+ * make and unmake moves on one engine instead of copying it.
+ *
+ * Drawn candidates and the owners of claimed triangles are kept as bitmaps
+ * in the layout of {@link Tesselate_PackedState}, so {@link #pack()} is one
+ * array copy and {@link #load} rebuilds an engine from a packed position.
+ */
+public final class Tesselate_Engine {
+
+    // In board units (see Tesselate_Board)
+    public static final double DOT_RADIUS = 6;
+    public static final double MAX_EDGE_LENGTH = 250; // Maximum allowed edge length
+
+    public enum Player {
+        RED, BLUE;
+
+        public Player other() {
+            return this == RED ? BLUE : RED;
+        }
+    }
+
+    /** Outcome of {@link #applyMove(int, int)}; everything but OK leaves the state untouched. */
+    public enum MoveResult { OK, NO_EDGES_LEFT, SAME_DOT, DUPLICATE, TOO_LONG, CROSSES_EDGE, THROUGH_DOT }
+
+    // Dots are packed 21 bits apiece into triangle keys
+    public static final int MAX_DOTS = 1 << 21;
+
+    private Tesselate_BoardAnalysis analysis;
+    private Tesselate_Board board;
+    private long rngState; // SplitMix64 stream for rollDice(); copies continue it unchanged
+
+    // Drawn edges, used to explain why a non-candidate move is rejected
+    private Tesselate_SpatialGrid edgeGrid;
+
+    // Playable candidates: live[0 .. liveCount) in any order, livePos[c] = slot or -1
+    private int[] live;
+    private int[] livePos;
+    private int liveCount;
+
+    // Triangle opportunities: closing[c] = triangles candidate c would close if
+    // drawn now; bit c of threatBits is set when c is live and closing[c] > 0
+    private int[] closing;
+    private long[] threatBits;
+    private int threatCount;
+
+    // State
+    private Player current = Player.RED;
+    private int edgesRemaining = 0;
+    private int scoreRed = 0;
+    private int scoreBlue = 0;
+
+    // Drawn candidates and BLUE's triangles in Tesselate_PackedState layout;
+    // word 0 is only filled in by pack()
+    private long[] position;
+    private int triangleBase;
+    private int edgeCount;
+    private int triangleCount;
+
+    // Zobrist hash of the drawn edges and owned triangles (see Tesselate_Zobrist)
+    private long boardHash;
+
+    // Adjacency of drawn edges as one bitset per dot: bit k of row a is set when
+    // edge (a, k) exists. Row a occupies adj[a * words .. (a + 1) * words).
+    private int words;
+    private long[] adj;
+
+    // Drawn edges in placement order; the index is the id stored in edgeGrid
+    private int[] edgeFrom = new int[16];
+    private int[] edgeTo = new int[16];
+
+    // Segment currently being checked by the grid visitors
+    private int qu, qv;
+    private double qx1, qy1, qx2, qy2;
+    private final Tesselate_SpatialGrid.Visitor crossingVisitor = this::crossesEdge;
+
+    // Triangles claimed by the last successful move, as vertex triples
+    private int[] lastClaimed = new int[12];
+    private int lastClaimedCount = 0;
+
+    // How long the last move's triangle claim took, measured only while timed
+    private boolean timed;
+    private long lastClaimNanos;
+
+    // Undo journal, one frame per action since the last reset or copy. A move
+    // frame is its dropped (candidate, live slot) pairs followed by MOVE_TRAILER
+    // ints ending in MOVE; the triangles it claimed are the ones on its edge
+    // with both other sides drawn, so they need no record. A roll is a single ROLL.
+    private static final int ROLL = 0, MOVE = 1, MOVE_TRAILER = 6;
+    private int[] journal = new int[64];
+    private int journalSize;
+    private int historySize;
+
+    public Tesselate_Engine(Tesselate_Board board, long seed) {
+        this(Tesselate_AnalysisCache.shared().get(board, MAX_EDGE_LENGTH, DOT_RADIUS), seed);
+    }
+
+    /** New game on an already analysed board; the analysis is shared, not copied. */
+    public Tesselate_Engine(Tesselate_BoardAnalysis analysis, long seed) {
+        reset(analysis, seed);
+    }
+
+    private Tesselate_Engine(Tesselate_Engine src) {
+        this.analysis = src.analysis;
+        this.board = src.board;
+        this.rngState = src.rngState;
+        this.edgeGrid = src.edgeGrid.copy();
+        this.words = src.words;
+        this.adj = src.adj.clone();
+        this.live = src.live.clone();
+        this.livePos = src.livePos.clone();
+        this.liveCount = src.liveCount;
+        this.closing = src.closing.clone();
+        this.threatBits = src.threatBits.clone();
+        this.threatCount = src.threatCount;
+        this.edgeFrom = src.edgeFrom.clone();
+        this.edgeTo = src.edgeTo.clone();
+        this.current = src.current;
+        this.edgesRemaining = src.edgesRemaining;
+        this.scoreRed = src.scoreRed;
+        this.scoreBlue = src.scoreBlue;
+        this.boardHash = src.boardHash;
+        this.position = src.position.clone();
+        this.triangleBase = src.triangleBase;
+        this.edgeCount = src.edgeCount;
+        this.triangleCount = src.triangleCount;
+    }
+
+    /**
+     * Independent deep copy; the board and its analysis are shared since they
+     * never change. The copy starts with an empty undo history, and its
+     * {@link #rollDice()} continues the original's dice stream without
+     * advancing the original.
+     */
+    public Tesselate_Engine copy() {
+        return new Tesselate_Engine(this);
+    }
+
+    /** Starts a new game on the same board, reusing every buffer. */
+    public void reset(long seed) {
+        reset(analysis, seed);
+    }
+
+    /**
+     * Starts a new game, possibly on another board. Buffers are kept and only
+     * grown when the new board needs more room than the old one had.
+     */
+    public void reset(Tesselate_BoardAnalysis analysis, long seed) {
+        Tesselate_Board b = analysis.board();
+        if (b.size() > MAX_DOTS) throw new IllegalArgumentException("too many dots: " + b.size());
+        if (this.analysis != analysis) {
+            this.edgeGrid = Tesselate_SpatialGrid.forBounds(b, analysis.maxEdgeLength() / 4);
+        } else {
+            edgeGrid.clear();
+        }
+        this.analysis = analysis;
+        this.board = b;
+        rngState = seed;
+
+        current = Player.RED;
+        edgesRemaining = 0;
+        scoreRed = 0;
+        scoreBlue = 0;
+        edgeCount = 0;
+        triangleCount = 0;
+        boardHash = 0;
+        lastClaimedCount = 0;
+        journalSize = 0;
+        historySize = 0;
+
+        int length = Tesselate_PackedState.length(analysis);
+        if (position == null || position.length != length) position = new long[length];
+        else Arrays.fill(position, 0L);
+        triangleBase = Tesselate_PackedState.triangleBase(analysis);
+
+        int dots = b.size();
+        words = (dots + 63) >>> 6;
+        if (adj == null || adj.length < dots * words) adj = new long[dots * words];
+        else Arrays.fill(adj, 0, dots * words, 0L);
+
+        int n = analysis.candidateCount();
+        if (live == null || live.length < n) {
+            live = new int[n];
+            livePos = new int[n];
+        }
+        for (int c = 0; c < n; c++) {
+            live[c] = c;
+            livePos[c] = c;
+        }
+        liveCount = n;
+        if (closing == null || closing.length < n) {
+            closing = new int[n];
+            threatBits = new long[(n + 63) >>> 6];
+        } else {
+            Arrays.fill(closing, 0, n, 0);
+            Arrays.fill(threatBits, 0, (n + 63) >>> 6, 0L);
+        }
+        threatCount = 0;
+    }
+
+    public Tesselate_Board board() { return board; }
+    public Tesselate_BoardAnalysis analysis() { return analysis; }
+    public Player current() { return current; }
+    public int edgesRemaining() { return edgesRemaining; }
+    public int edgeCount() { return edgeCount; }
+    public int triangleCount() { return triangleCount; }
+
+    public int score(Player p) {
+        return p == Player.RED ? scoreRed : scoreBlue;
+    }
+
+    public boolean hasEdge(int a, int b) {
+        return a != b && (adj[a * words + (b >>> 6)] & (1L << b)) != 0;
+    }
+
+    /** Whether triangle (a, b, c) is claimed, i.e. it is empty and all three sides are drawn. */
+    public boolean hasTriangle(int a, int b, int c) {
+        int side = analysis.find(a, b);
+        return side >= 0 && hasEdge(a, b) && hasEdge(a, c) && hasEdge(b, c) && analysis.isTriangle(side, c);
+    }
+
+    /** Whether candidate c is drawn. */
+    public boolean isDrawn(int c) {
+        return (position[1 + (c >>> 6)] & (1L << c)) != 0;
+    }
+
+    /** The position as a new packed state; the undo history and dice stream are not part of it. */
+    public Tesselate_PackedState pack() {
+        Tesselate_PackedState p = new Tesselate_PackedState(analysis);
+        pack(p);
+        return p;
+    }
+
+    /** Packs the position into {@code into}, a packed state of the same analysis, without allocating. */
+    public void pack(Tesselate_PackedState into) {
+        if (into.analysis() != analysis) throw new IllegalArgumentException("position of another board");
+        long[] w = into.words();
+        System.arraycopy(position, 1, w, 1, position.length - 1);
+        w[0] = Tesselate_PackedState.header(current, edgesRemaining, scoreRed, scoreBlue);
+    }
+
+    /**
+     * Sets the engine to a packed position of its analysis, with an empty
+     * undo history; the dice stream carries on. O(candidates + conflicts
+     * and triangles of the drawn edges). Throws IllegalArgumentException,
+     * leaving a fresh game, if the position breaks the rules: crossing
+     * edges, a BLUE triangle that is not closed, or scores that do not
+     * match the triangles.
+     */
+    public void load(Tesselate_PackedState p) {
+        if (p.analysis() != analysis) throw new IllegalArgumentException("position of another board");
+        reset(analysis, rngState);
+        for (int c = p.nextDrawn(0); c >= 0; c = p.nextDrawn(c + 1)) {
+            if (livePos[c] < 0) {
+                reset(analysis, rngState);
+                throw new IllegalArgumentException("edge " + c + " crosses an earlier edge");
+            }
+            draw(c);
+        }
+        for (int c = p.nextDrawn(0); c >= 0; c = p.nextDrawn(c + 1)) {
+            int u = analysis.candidateU(c), v = analysis.candidateV(c);
+            for (int i = 0, n = analysis.triangleCount(c); i < n; i++) {
+                int k = analysis.triangleCorner(c, i);
+                if (k > v && hasEdge(u, k) && hasEdge(v, k)) {
+                    claim(c, i, p.isBlue(analysis.triangleId(c, i)) ? Player.BLUE : Player.RED);
+                }
+            }
+        }
+        journalSize = 0;
+        lastClaimedCount = 0;
+        boolean blueClosed = Arrays.equals(position, triangleBase, position.length,
+                p.words(), triangleBase, position.length);
+        if (!blueClosed || scoreRed != p.score(Player.RED) || scoreBlue != p.score(Player.BLUE)
+                || p.edgesRemaining() > 6) {
+            reset(analysis, rngState);
+            throw new IllegalArgumentException("position breaks the rules");
+        }
+        current = p.current();
+        edgesRemaining = p.edgesRemaining();
+    }
+
+    /**
+     * Zobrist hash of the position: drawn edges, owned triangles, the player
+     * to move and the edges left in the turn. Transposed move orders that
+     * reach the same position hash the same.
+     */
+    public long hash() {
+        return boardHash ^ Tesselate_Zobrist.turn(current, edgesRemaining);
+    }
+
+    /** Number of triangles undrawn candidate c would complete if it were drawn now; O(1). */
+    public int closes(int c) {
+        return closing[c];
+    }
+
+    /**
+     * Third corners of the triangles undrawn candidate c would complete, into
+     * {@code out} (at least {@link #closes(int)} long); returns how many.
+     */
+    public int closingDots(int c, int[] out) {
+        int a = analysis.candidateU(c), b = analysis.candidateV(c);
+        int n = 0;
+        for (int i = 0, t = analysis.triangleCount(c); i < t; i++) {
+            int k = analysis.triangleCorner(c, i);
+            if (hasEdge(a, k) && hasEdge(b, k)) out[n++] = k;
+        }
+        return n;
+    }
+
+    /** Number of playable candidates that would complete at least one triangle. */
+    public int threatCount() { return threatCount; }
+
+    /**
+     * Smallest candidate id >= {@code from} that is playable and would
+     * complete a triangle, or -1. Walk them all with
+     * {@code for (int c = nextThreat(0); c >= 0; c = nextThreat(c + 1))}.
+     */
+    public int nextThreat(int from) {
+        int w = from >>> 6, n = (analysis.candidateCount() + 63) >>> 6;
+        if (w >= n) return -1;
+        long bits = threatBits[w] & (-1L << from);
+        while (bits == 0) {
+            if (++w == n) return -1;
+            bits = threatBits[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /** True once no candidate edge is left to draw. */
+    public boolean isGameOver() {
+        return liveCount == 0;
+    }
+
+    /** Player with the higher score, or null on a draw. */
+    public Player leader() {
+        if (scoreRed == scoreBlue) return null;
+        return scoreRed > scoreBlue ? Player.RED : Player.BLUE;
+    }
+
+    /** Rolls the dice for the current player from the engine's own random stream. */
+    public int rollDice() {
+        rngState += 0x9e3779b97f4a7c15L;
+        return rollDice(rngState);
+    }
+
+    /** Rolls the dice deterministically: the same seed always gives the same face. */
+    public int rollDice(long seed) {
+        int roll = 1 + (int) Long.remainderUnsigned(mix(seed), 6);
+        applyRoll(roll);
+        return roll;
+    }
+
+    /** Starts a turn with a known roll; used by replays and by bots expanding chance nodes. */
+    public void applyRoll(int roll) {
+        if (edgesRemaining > 0) throw new IllegalStateException("turn still has " + edgesRemaining + " edges");
+        if (roll < 1 || roll > 6) throw new IllegalArgumentException("roll " + roll);
+        edgesRemaining = roll;
+        push(ROLL);
+        historySize++;
+    }
+
+    /** Validates the move without applying it. */
+    public MoveResult check(int a, int b) {
+        if (edgesRemaining <= 0) return MoveResult.NO_EDGES_LEFT;
+        if (a == b) return MoveResult.SAME_DOT;
+
+        int c = analysis.find(a, b);
+        if (c >= 0 && livePos[c] >= 0) return MoveResult.OK;
+
+        if (hasEdge(a, b)) return MoveResult.DUPLICATE;
+
+        // Check if edge is too long
+        if (board.distance(a, b) > analysis.maxEdgeLength()) return MoveResult.TOO_LONG;
+
+        // A live candidate is only ever dropped by a crossing; a pair that never
+        // was a candidate may cross too, otherwise a dot is in the way
+        if (c >= 0 || intersectsWithAnyEdge(a, b)) return MoveResult.CROSSES_EDGE;
+        return MoveResult.THROUGH_DOT;
+    }
+
+    /** Whether edge (a, b) is still playable, ignoring whose turn it is. */
+    public boolean isLegal(int a, int b) {
+        int c = analysis.find(a, b);
+        return c >= 0 && livePos[c] >= 0;
+    }
+
+    /**
+     * Draws edge (a, b) for the current player, claims any triangles it
+     * completes and passes the turn once the roll is used up.
+     */
+    public MoveResult applyMove(int a, int b) {
+        MoveResult r = check(a, b);
+        if (r != MoveResult.OK) return r;
+
+        int frame = journalSize;
+        int remainingBefore = edgesRemaining;
+        Player mover = current;
+        int c = analysis.find(a, b);
+        draw(c);
+        long claimStart = timed ? System.nanoTime() : 0;
+        int claimed = claimTrianglesByNewEdge(c, current);
+        if (timed) lastClaimNanos = System.nanoTime() - claimStart;
+
+        edgesRemaining = Math.max(0, edgesRemaining - 1);
+        if (edgesRemaining == 0) {
+            current = current.other();
+        }
+
+        int killed = (journalSize - frame) / 2;
+        if (journalSize + MOVE_TRAILER > journal.length) journal = Arrays.copyOf(journal, journal.length * 2);
+        journal[journalSize++] = c;
+        journal[journalSize++] = killed;
+        journal[journalSize++] = claimed;
+        journal[journalSize++] = remainingBefore;
+        journal[journalSize++] = mover.ordinal();
+        journal[journalSize++] = MOVE;
+        historySize++;
+        return MoveResult.OK;
+    }
+
+    // Draws candidate c without claiming anything; its crossings are dropped from play
+    private void draw(int c) {
+        int u = analysis.candidateU(c), v = analysis.candidateV(c);
+        int id = edgeCount++;
+        if (id == edgeFrom.length) {
+            edgeFrom = Arrays.copyOf(edgeFrom, id * 2);
+            edgeTo = Arrays.copyOf(edgeTo, id * 2);
+        }
+        edgeFrom[id] = u;
+        edgeTo[id] = v;
+        edgeGrid.insertSegment(id, board.x(u), board.y(u), board.x(v), board.y(v));
+        position[1 + (c >>> 6)] |= 1L << c;
+
+        // The new edge and every candidate crossing it are no longer playable
+        boardHash ^= Tesselate_Zobrist.edge(c);
+        kill(c);
+        for (int i = 0, n = analysis.conflictCount(c); i < n; i++) {
+            kill(analysis.conflict(c, i));
+        }
+
+        link(u, v);
+        link(v, u);
+        shiftClosing(c, 1);
+    }
+
+    /** Number of actions (rolls and moves) {@link #undo()} can take back. */
+    public int historySize() { return historySize; }
+
+    /**
+     * Takes back the last roll or move made since the last reset or copy,
+     * restoring the position exactly, hash included. The engine's own dice
+     * stream is not rewound, and {@link #lastClaimedCount()} becomes 0.
+     */
+    public void undo() {
+        if (historySize == 0) throw new IllegalStateException("nothing to undo");
+        historySize--;
+        lastClaimedCount = 0;
+        if (journal[--journalSize] == ROLL) {
+            edgesRemaining = 0;
+            return;
+        }
+        current = Player.values()[journal[--journalSize]];
+        edgesRemaining = journal[--journalSize];
+        int claimed = journal[--journalSize];
+        int killed = journal[--journalSize];
+        int c = journal[--journalSize];
+        int u = analysis.candidateU(c), v = analysis.candidateV(c);
+
+        for (int i = 0, n = claimed > 0 ? analysis.triangleCount(c) : 0; i < n; i++) {
+            int k = analysis.triangleCorner(c, i);
+            if (hasEdge(u, k) && hasEdge(v, k)) {
+                boardHash ^= Tesselate_Zobrist.triangle(triangleKey(u, v, k), current);
+                int t = analysis.triangleId(c, i);
+                position[triangleBase + (t >>> 6)] &= ~(1L << t);
+                triangleCount--;
+                if (current == Player.RED) scoreRed -= 2;
+                else scoreBlue -= 1;
+            }
+        }
+        shiftClosing(c, -1);
+        adj[u * words + (v >>> 6)] &= ~(1L << v);
+        adj[v * words + (u >>> 6)] &= ~(1L << u);
+
+        // Revive in reverse, so every candidate returns to its old slot
+        for (int i = 0; i < killed; i++) {
+            int pos = journal[--journalSize];
+            revive(journal[--journalSize], pos);
+        }
+        boardHash ^= Tesselate_Zobrist.edge(c);
+        position[1 + (c >>> 6)] &= ~(1L << c);
+        int id = --edgeCount;
+        edgeGrid.removeSegment(id, board.x(u), board.y(u), board.x(v), board.y(v));
+    }
+
+    /** Undoes actions until {@link #historySize()} is {@code size}; searches use it to return to a mark. */
+    public void undoTo(int size) {
+        while (historySize > size) undo();
+    }
+
+    /** {@link #applyMove(int, int)} for a candidate id of this board's analysis. */
+    public MoveResult applyCandidate(int c) {
+        return applyMove(analysis.candidateU(c), analysis.candidateV(c));
+    }
+
+    /**
+     * Every edge that could legally be drawn right now, ignoring whose turn
+     * it is, as packed keys (see {@link #edgeKey(int, int)}).
+     */
+    public long[] legalMoves() {
+        long[] out = new long[liveCount];
+        for (int i = 0; i < liveCount; i++) {
+            int c = live[i];
+            out[i] = edgeKey(analysis.candidateU(c), analysis.candidateV(c));
+        }
+        return out;
+    }
+
+    /** Number of playable candidates. */
+    public int legalMoveCount() { return liveCount; }
+
+    /** Candidate id of the i-th playable move, 0 <= i < legalMoveCount(); order is arbitrary. */
+    public int legalMove(int i) { return live[i]; }
+
+    // Swaps c out of the live list and journals where it was
+    private void kill(int c) {
+        int pos = livePos[c];
+        if (pos < 0) return;
+        int last = live[--liveCount];
+        live[pos] = last;
+        livePos[last] = pos;
+        livePos[c] = -1;
+        updateThreat(c);
+        push(c);
+        push(pos);
+    }
+
+    // Exact inverse of kill(c) while pos still holds what kill moved there
+    private void revive(int c, int pos) {
+        int moved = live[pos];
+        live[liveCount] = moved;
+        livePos[moved] = liveCount;
+        live[pos] = c;
+        livePos[c] = pos;
+        liveCount++;
+        updateThreat(c);
+    }
+
+    /**
+     * With candidate c = (u, v) drawn, each of its triangles (u, v, k) that
+     * now misses only one side makes that side close {@code delta} more.
+     * Sides already drawn are left alone: a drawn candidate is only undrawn
+     * by undo, after every later change to it has been undone. O(triangles
+     * on c), which is at most the degree of u.
+     */
+    private void shiftClosing(int c, int delta) {
+        int u = analysis.candidateU(c), v = analysis.candidateV(c);
+        for (int i = 0, t = analysis.triangleCount(c); i < t; i++) {
+            int k = analysis.triangleCorner(c, i);
+            boolean uk = hasEdge(u, k), vk = hasEdge(v, k);
+            if (uk == vk) continue;
+            int d = uk ? analysis.find(v, k) : analysis.find(u, k);
+            closing[d] += delta;
+            updateThreat(d);
+        }
+    }
+
+    private void updateThreat(int c) {
+        boolean threat = livePos[c] >= 0 && closing[c] > 0;
+        int w = c >>> 6;
+        long bit = 1L << c;
+        if (threat == ((threatBits[w] & bit) != 0)) return;
+        threatBits[w] ^= bit;
+        threatCount += threat ? 1 : -1;
+    }
+
+    private void push(int x) {
+        if (journalSize == journal.length) journal = Arrays.copyOf(journal, journalSize * 2);
+        journal[journalSize++] = x;
+    }
+
+    /** Number of triangles claimed by the last successful move. */
+    public int lastClaimedCount() { return lastClaimedCount; }
+
+    /**
+     * Makes {@link #applyMove} time its triangle claim, for the metrics of
+     * the window's own engine. Copies start untimed, so bots never pay for it.
+     */
+    public void setTimed(boolean timed) { this.timed = timed; }
+
+    /** Nanoseconds the last move spent claiming triangles, if timed. */
+    public long lastClaimNanos() { return lastClaimNanos; }
+
+    /** Vertex {@code corner} (0..2) of the i-th triangle claimed by the last move. */
+    public int lastClaimed(int i, int corner) { return lastClaimed[i * 3 + corner]; }
+
+    /** Packs an undirected edge into one long, smaller index in the high half. */
+    public static long edgeKey(int a, int b) {
+        int u = Math.min(a, b), v = Math.max(a, b);
+        return ((long) u << 32) | v;
+    }
+
+    public static int edgeU(long key) { return (int) (key >>> 32); }
+    public static int edgeV(long key) { return (int) key; }
+
+    /**
+     * Packs a triangle into 3 x 21 bits, corners in ascending order. Every
+     * dot index fits, since reset refuses boards of more than {@link #MAX_DOTS}.
+     */
+    public static long triangleKey(int a, int b, int c) {
+        // Three-element sorting network, no array needed
+        int t;
+        if (a > b) { t = a; a = b; b = t; }
+        if (b > c) { t = b; b = c; c = t; }
+        if (a > b) { t = a; a = b; b = t; }
+        return ((long) a << 42) | ((long) b << 21) | c;
+    }
+
+    /** Corner 0..2 of a packed triangle, in ascending order. */
+    public static int triangleCorner(long key, int corner) {
+        return (int) (key >>> (42 - 21 * corner)) & (MAX_DOTS - 1);
+    }
+
+    private void link(int a, int b) {
+        adj[a * words + (b >>> 6)] |= 1L << b;
+    }
+
+    /**
+     * Every empty triangle (a, b, k) on the new candidate c = (a, b) whose
+     * other two sides are drawn is closed by it. The analysis lists those
+     * triangles per candidate, already checked for dots inside, so this is a
+     * walk over a handful of corners. None of them can have been claimed
+     * before, since edge (a, b) did not exist until now.
+     */
+    private int claimTrianglesByNewEdge(int c, Player p) {
+        lastClaimedCount = 0;
+        int gained = 0;
+        int a = analysis.candidateU(c), b = analysis.candidateV(c);
+
+        for (int i = 0, n = analysis.triangleCount(c); i < n; i++) {
+            int k = analysis.triangleCorner(c, i);
+            if (hasEdge(a, k) && hasEdge(b, k)) {
+                claim(c, i, p);
+                recordClaim(triangleKey(a, b, k));
+                gained++;
+            }
+        }
+        return gained;
+    }
+
+    // Scores the i-th triangle on drawn candidate c for p
+    private void claim(int c, int i, Player p) {
+        int k = analysis.triangleCorner(c, i);
+        boardHash ^= Tesselate_Zobrist.triangle(triangleKey(analysis.candidateU(c), analysis.candidateV(c), k), p);
+        triangleCount++;
+        if (p == Player.RED) {
+            scoreRed += 2;
+        } else {
+            int t = analysis.triangleId(c, i);
+            position[triangleBase + (t >>> 6)] |= 1L << t;
+            scoreBlue += 1;
+        }
+    }
+
+    private void recordClaim(long t) {
+        int at = lastClaimedCount * 3;
+        if (at + 3 > lastClaimed.length) lastClaimed = Arrays.copyOf(lastClaimed, lastClaimed.length * 2);
+        lastClaimed[at] = triangleCorner(t, 0);
+        lastClaimed[at + 1] = triangleCorner(t, 1);
+        lastClaimed[at + 2] = triangleCorner(t, 2);
+        lastClaimedCount++;
+    }
+
+    // Check if new edge intersects with any existing edge sharing a grid cell
+    private boolean intersectsWithAnyEdge(int a, int b) {
+        setQuery(a, b);
+        return edgeGrid.query(qx1, qy1, qx2, qy2, 0, crossingVisitor);
+    }
+
+    private boolean crossesEdge(int id) {
+        int u = edgeFrom[id], v = edgeTo[id];
+
+        // Skip if edges share a common vertex (they can touch at endpoints)
+        if (qu == u || qu == v || qv == u || qv == v) {
+            return false;
+        }
+
+        // Check if the two line segments intersect
+        return Tesselate_Geometry.segmentsIntersect(qx1, qy1, qx2, qy2,
+                board.x(u), board.y(u), board.x(v), board.y(v));
+    }
+
+    private void setQuery(int u, int v) {
+        qu = u;
+        qv = v;
+        qx1 = board.x(u);
+        qy1 = board.y(u);
+        qx2 = board.x(v);
+        qy2 = board.y(v);
+    }
+
+    // SplitMix64 finaliser; spreads nearby seeds over the whole range
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,240 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Depth-limited expectiminimax player.
+ *
+ * Values are from RED's side: RED maximises, BLUE minimises, and a dice
+ * roll is a chance node worth the average of its six faces. Depth counts
+ * edges, so a six-edge turn is six plies and rolls cost nothing. Decision
+ * nodes use alpha-beta with the hash move and then edges that close the
+ * most triangles tried first.
+ *
+ * Different orders of the same edges in one turn reach the same position,
+ * so every result is kept in a shared transposition table keyed by the
+ * engine's Zobrist hash. Search deepens one ply at a time until the
+ * deadline; the move of the last finished depth is played. With more than
+ * one thread, helpers search the same tree at staggered depths and only
+ * share the table with the main search (lazy SMP). Helpers borrow threads
+ * from the common fork-join pool, so dropping a bot leaves nothing
+ * running. Each thread walks the tree on its own engine, making and
+ * undoing moves instead of copying.
+ */
+public final class Tesselate_ExpectiminimaxBot implements Tesselate_Bot {
+
+    private static final double WIN = 1000; // terminal bonus, well above any score difference
+    private static final double INF = Double.POSITIVE_INFINITY;
+    private static final int CHECK_EVERY = 1024; // nodes between deadline checks
+
+    private final long timeMillis;
+    private final int maxDepth;
+    private final int threads;
+    private final Tesselate_TranspositionTable table;
+    private Tesselate_BoardAnalysis tableBoard; // candidate ids in the table refer to this board
+
+    public Tesselate_ExpectiminimaxBot(Difficulty difficulty) {
+        this(difficulty.timeMillis, difficulty.depth, Runtime.getRuntime().availableProcessors(), 20);
+    }
+
+    public Tesselate_ExpectiminimaxBot(long timeMillis, int maxDepth, int threads, int log2TableEntries) {
+        this.timeMillis = timeMillis;
+        this.maxDepth = Math.max(1, maxDepth);
+        this.threads = Math.max(1, threads);
+        this.table = new Tesselate_TranspositionTable(log2TableEntries);
+    }
+
+    @Override
+    public int chooseMove(Tesselate_Engine state) {
+        if (state.isGameOver() || state.edgesRemaining() == 0) {
+            throw new IllegalStateException("no move to choose");
+        }
+        if (state.legalMoveCount() == 1) return state.legalMove(0);
+        if (state.analysis() != tableBoard) {
+            if (state.analysis().candidateCount() > Tesselate_TranspositionTable.MAX_MOVE + 1) {
+                throw new IllegalArgumentException("too many candidate edges to search: " + state.analysis().candidateCount());
+            }
+            table.clear();
+            tableBoard = state.analysis();
+        }
+
+        long deadline = System.nanoTime() + timeMillis * 1_000_000L;
+        // No line can be longer than the edges still playable
+        int depthLimit = Math.min(maxDepth, state.legalMoveCount());
+
+        AtomicBoolean stop = new AtomicBoolean();
+        ForkJoinTask<?>[] helpers = new ForkJoinTask<?>[threads - 1];
+        for (int h = 0; h < helpers.length; h++) {
+            Searcher helper = new Searcher(state, table, deadline, stop);
+            int firstDepth = 2 + (h & 1);
+            helpers[h] = ForkJoinPool.commonPool().submit(() -> helper.deepen(firstDepth, depthLimit));
+        }
+        int best = new Searcher(state, table, deadline, stop).deepen(1, depthLimit);
+        // The main search is done; helpers stop at their next check
+        stop.set(true);
+        for (ForkJoinTask<?> t : helpers) t.join();
+        return best;
+    }
+
+    /** Static value of a position from RED's side. */
+    static double evaluate(Tesselate_Engine s) {
+        double diff = s.score(Tesselate_Engine.Player.RED) - s.score(Tesselate_Engine.Player.BLUE);
+        if (!s.isGameOver()) return diff;
+        return diff == 0 ? 0 : (diff > 0 ? WIN + diff : -WIN + diff);
+    }
+
+    /** Thrown to unwind a search that ran out of time; shared and stackless. */
+    private static final class Timeout extends RuntimeException {
+        static final Timeout INSTANCE = new Timeout();
+
+        private Timeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** One search thread; all state apart from the table is private to it. */
+    private static final class Searcher {
+        private final Tesselate_Engine root;
+        private final Tesselate_TranspositionTable table;
+        private final long deadline;
+        private final Tesselate_TranspositionTable.Entry probe = new Tesselate_TranspositionTable.Entry();
+        private final AtomicBoolean stop;
+        private long[][] orderBuffers = new long[8][];
+        private int nodes;
+
+        Searcher(Tesselate_Engine root, Tesselate_TranspositionTable table, long deadline, AtomicBoolean stop) {
+            this.root = root.copy(); // searched by make and unmake, so private to this thread
+            this.table = table;
+            this.deadline = deadline;
+            this.stop = stop;
+        }
+
+        // Iterative deepening; returns the best root move of the deepest finished iteration
+        int deepen(int firstDepth, int depthLimit) {
+            int best = -1;
+            int mark = root.historySize();
+            try {
+                for (int depth = firstDepth; depth <= depthLimit; depth++) {
+                    best = searchRoot(depth, best);
+                }
+            } catch (Timeout t) {
+                // keep the last finished iteration; the timeout left moves made
+                root.undoTo(mark);
+            }
+            return best >= 0 ? best : root.legalMove(0);
+        }
+
+        private int searchRoot(int depth, int previousBest) {
+            boolean maximising = root.current() == Tesselate_Engine.Player.RED;
+            int n = order(root, 0);
+            long[] moves = orderBuffers[0];
+            if (previousBest >= 0) promote(moves, n, previousBest);
+            int best = (int) moves[0];
+            double alpha = -INF, beta = INF;
+            for (int i = 0; i < n; i++) {
+                int c = (int) moves[i];
+                root.applyCandidate(c);
+                double v = search(root, depth - 1, 1, alpha, beta);
+                root.undo();
+                if (maximising ? v > alpha : v < beta) {
+                    best = c;
+                    if (maximising) alpha = v;
+                    else beta = v;
+                }
+            }
+            table.store(root.hash(), maximising ? alpha : beta, depth, Tesselate_TranspositionTable.EXACT, best);
+            return best;
+        }
+
+        private double search(Tesselate_Engine s, int depth, int ply, double alpha, double beta) {
+            if (++nodes % CHECK_EVERY == 0 && (System.nanoTime() > deadline || stop.get())) {
+                throw Timeout.INSTANCE;
+            }
+            if (depth == 0 || s.isGameOver()) return evaluate(s);
+            if (s.edgesRemaining() == 0) return chance(s, depth, ply);
+
+            double alpha0 = alpha, beta0 = beta;
+            long key = s.hash();
+            int hashMove = -1;
+            if (table.probe(key, probe)) {
+                hashMove = probe.move;
+                if (probe.depth >= depth) {
+                    if (probe.flag == Tesselate_TranspositionTable.EXACT) return probe.value;
+                    if (probe.flag == Tesselate_TranspositionTable.LOWER) alpha = Math.max(alpha, probe.value);
+                    else beta = Math.min(beta, probe.value);
+                    if (alpha >= beta) return probe.value;
+                }
+            }
+
+            boolean maximising = s.current() == Tesselate_Engine.Player.RED;
+            double best = maximising ? -INF : INF;
+            int bestMove = -1;
+            int n = order(s, ply);
+            long[] moves = orderBuffers[ply];
+            if (hashMove >= 0) promote(moves, n, hashMove);
+            for (int i = 0; i < n; i++) {
+                int c = (int) moves[i];
+                s.applyCandidate(c);
+                double v = search(s, depth - 1, ply + 1, alpha, beta);
+                s.undo();
+                if (maximising ? v > best : v < best) {
+                    best = v;
+                    bestMove = c;
+                }
+                if (maximising) alpha = Math.max(alpha, v);
+                else beta = Math.min(beta, v);
+                if (alpha >= beta) break;
+            }
+
+            int flag;
+            if (best <= alpha0) flag = Tesselate_TranspositionTable.UPPER;
+            else if (best >= beta0) flag = Tesselate_TranspositionTable.LOWER;
+            else flag = Tesselate_TranspositionTable.EXACT;
+            table.store(key, best, depth, flag, bestMove);
+            return best;
+        }
+
+        // Average over the six faces; each face gets a full window since the mean needs exact values
+        private double chance(Tesselate_Engine s, int depth, int ply) {
+            double sum = 0;
+            for (int face = 1; face <= 6; face++) {
+                s.applyRoll(face);
+                sum += search(s, depth, ply, -INF, INF);
+                s.undo();
+            }
+            return sum / 6;
+        }
+
+        // Fills orderBuffers[ply] with the legal moves, most triangles closed first; returns the count.
+        // Only the engine's threats are sorted; the moves that close nothing follow in live order.
+        private int order(Tesselate_Engine s, int ply) {
+            if (ply >= orderBuffers.length) orderBuffers = Arrays.copyOf(orderBuffers, ply * 2);
+            int n = s.legalMoveCount();
+            long[] buf = orderBuffers[ply];
+            if (buf == null || buf.length < n) buf = orderBuffers[ply] = new long[s.analysis().candidateCount()];
+            int t = 0;
+            for (int c = s.nextThreat(0); c >= 0; c = s.nextThreat(c + 1)) {
+                // High word sorts by closes descending, low word keeps the candidate id
+                buf[t++] = ((long) (Integer.MAX_VALUE - s.closes(c)) << 32) | c;
+            }
+            Arrays.sort(buf, 0, t);
+            for (int i = 0; i < t; i++) buf[i] &= 0xffffffffL;
+            for (int i = 0, k = t; i < n; i++) {
+                int c = s.legalMove(i);
+                if (s.closes(c) == 0) buf[k++] = c;
+            }
+            return n;
+        }
+
+        private static void promote(long[] moves, int n, int move) {
+            for (int i = 0; i < n; i++) {
+                if (moves[i] == move) {
+                    System.arraycopy(moves, 0, moves, 1, i);
+                    moves[0] = move;
+                    return;
+                }
+            }
+        }
+    }
+}
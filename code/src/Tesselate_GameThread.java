@@ -0,0 +1,619 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The window's game, played on a thread of its own.
+ *
+ * This thread owns the {@link Tesselate_Engine}, the undo history, the
+ * replay file, the leaderboard result and the bot turns. The window never
+ * touches any of them: it posts commands ({@link #newGame}, {@link #play},
+ * {@link #roll}, {@link #undo}, {@link #redo}, {@link #setBot},
+ * {@link #setHints}) through a
+ * lock-free {@link Tesselate_SpscQueue}, and each command comes back as one
+ * immutable {@link Diff}: what to draw or take off the board, the
+ * selection, and a snapshot of everything the HUD shows. Bot answers come
+ * in through a second queue from the bot thread. A slow check on a large
+ * board or a full-board claim therefore never holds up input or drawing.
+ *
+ * When a diff is published into an empty outbox, {@code onDiff} is run on
+ * this thread; the window uses it to schedule a drain on its next pulse
+ * and calls {@link #rearm} once it finds the outbox empty.
+ *
+ * The command methods must all be called from one thread (the FX thread).
+ */
+public final class Tesselate_GameThread {
+
+    /** Where a diff is drawn; called on the consumer thread by {@link Diff#applyTo}. */
+    public interface View {
+        void edge(int a, int b, Tesselate_Engine.Player owner);
+
+        /** The triangles one edge claimed, as (a, b, c) triples. */
+        void triangles(int[] corners, Tesselate_Engine.Player owner);
+
+        /** Takes back the newest edge and the triangles it claimed. */
+        void removeEdge(int triangles);
+    }
+
+    /** Selection values of a diff besides a dot index. */
+    public static final int KEEP = -2, NONE = -1;
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final String REPLAY_DIR = System.getProperty("tessellate.replays"); // null: no recording
+
+    // Render ops: opcode then operands
+    private static final int OP_EDGE = 0;      // a, b, owner
+    private static final int OP_TRIANGLES = 1; // owner, count, count * (a, b, c)
+    private static final int OP_REMOVE = 2;    // triangles
+
+    private static final System.Logger LOG = System.getLogger(Tesselate_GameThread.class.getName());
+
+    /** What one command changed, and the HUD after it. */
+    public static final class Diff {
+        final int game;                     // number newGame returned for its game
+        final Tesselate_BoardAnalysis board; // a new game on this board, applied before the ops; or null
+        final int select;                   // dot to select, NONE or KEEP
+        final long clickNanos;              // when the human click it completed was made, or 0
+        final Tesselate_Engine.Player current;
+        final Tesselate_Engine.Player leader;
+        final boolean gameOver, botTurn, canUndo, canRedo;
+        final int remaining, scoreRed, scoreBlue;
+        final int[] hints;                  // (a, b, triangles) per threat while hints are on, else null
+        private final int[] ops;
+
+        private Diff(Tesselate_GameThread g) {
+            Tesselate_Engine e = g.engine;
+            game = g.games;
+            board = g.newBoard;
+            select = g.select;
+            clickNanos = g.clickNanos;
+            current = e.current();
+            leader = e.leader();
+            gameOver = e.isGameOver();
+            botTurn = g.isBotTurn();
+            canUndo = g.actionCount > 0 && !g.resultRecorded;
+            canRedo = g.actionCount < g.actions.size();
+            remaining = gameOver ? 0 : e.edgesRemaining();
+            scoreRed = e.score(Tesselate_Engine.Player.RED);
+            scoreBlue = e.score(Tesselate_Engine.Player.BLUE);
+            hints = g.hints ? g.hints() : null;
+            ops = Arrays.copyOf(g.ops, g.opsSize);
+        }
+
+        /** True if the human may draw an edge now. */
+        boolean humanToMove() {
+            return !gameOver && !botTurn && remaining > 0;
+        }
+
+        void applyTo(View view) {
+            Tesselate_Engine.Player[] players = Tesselate_Engine.Player.values();
+            for (int i = 0; i < ops.length; ) {
+                switch (ops[i]) {
+                    case OP_EDGE:
+                        view.edge(ops[i + 1], ops[i + 2], players[ops[i + 3]]);
+                        i += 4;
+                        break;
+                    case OP_TRIANGLES:
+                        int n = ops[i + 2] * 3;
+                        view.triangles(Arrays.copyOfRange(ops, i + 3, i + 3 + n), players[ops[i + 1]]);
+                        i += 3 + n;
+                        break;
+                    case OP_REMOVE:
+                        view.removeEdge(ops[i + 1]);
+                        i += 2;
+                        break;
+                    default:
+                        throw new IllegalStateException("bad op " + ops[i]);
+                }
+            }
+        }
+    }
+
+    /** A roll (face > 0) or an edge, with what undo needs to restore the view. */
+    private static final class Action {
+        final int face;
+        final int a, b;
+        final boolean human;
+        final int selectedBefore; // dot selected when a human acted, or -1
+        final int triangles;      // triangles the edge claimed
+
+        Action(int face, int a, int b, boolean human, int selectedBefore, int triangles) {
+            this.face = face;
+            this.a = a;
+            this.b = b;
+            this.human = human;
+            this.selectedBefore = selectedBefore;
+            this.triangles = triangles;
+        }
+    }
+
+    // Between threads
+    private final Tesselate_SpscQueue<Runnable> commands = new Tesselate_SpscQueue<>(QUEUE_CAPACITY); // window -> here
+    private final Tesselate_SpscQueue<Runnable> answers = new Tesselate_SpscQueue<>(QUEUE_CAPACITY);  // bot -> here
+    private final Tesselate_SpscQueue<Diff> diffs = new Tesselate_SpscQueue<>(QUEUE_CAPACITY);        // here -> window
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private final Runnable onDiff;
+    private final Thread thread;
+    private int gamesPosted; // newGame calls, counted on the window side
+
+    // Everything below belongs to the game thread
+    private Tesselate_Engine engine;
+    private int games;
+
+    // Undo history: actions[0 .. actionCount) are on the board, the rest can be redone
+    private final List<Action> actions = new ArrayList<>();
+    private int actionCount = 0;
+
+    private Tesselate_ReplayWriter replay = null; // null when the game is not being recorded
+
+    private final Tesselate_Leaderboard leaderboard; // may be null
+    private final String playerName;
+    private boolean resultRecorded = false;
+
+    private final ExecutorService botThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "tesselate-bot");
+        t.setDaemon(true);
+        return t;
+    });
+    private Tesselate_Bot bot = null; // null while BLUE is played by a human
+    private String blueName;          // BLUE's leaderboard name
+    private boolean botThinking = false;
+    private int botGeneration = 0;    // bumped on reset, undo and redo so stale answers are dropped
+    private boolean hints = false;    // whether diffs list the edges that would close a triangle
+
+    // The diff being built
+    private int[] ops = new int[32];
+    private int opsSize;
+    private Tesselate_BoardAnalysis newBoard;
+    private int select = KEEP;
+    private long clickNanos;
+
+    /**
+     * Starts the thread. Results are recorded on {@code leaderboard} (if not
+     * null) with RED as {@code playerName}; the window reads it while
+     * holding its lock.
+     */
+    public Tesselate_GameThread(Tesselate_Leaderboard leaderboard, String playerName, String blueName,
+                                Runnable onDiff) {
+        this.leaderboard = leaderboard;
+        this.playerName = playerName;
+        this.blueName = blueName;
+        this.onDiff = onDiff;
+        thread = new Thread(this::run, "tesselate-game");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // ---- Window side --------------------------------------------------------------------------
+
+    /**
+     * Starts a new game on a board generated from {@code seed}: a random
+     * board with that average dot spacing in board units, or a built-in
+     * pattern if {@code spacing} is 0. The board does not depend on the
+     * window's size. Diffs of the new game carry the returned number.
+     */
+    public int newGame(long seed, double spacing) {
+        post(() -> startGame(seed, spacing));
+        return ++gamesPosted;
+    }
+
+    /** The human draws a-b; {@code clickNanos} is when the click was made. */
+    public void play(int a, int b, long clickNanos) {
+        post(() -> humanEdge(a, b, clickNanos));
+    }
+
+    /** The human rolls the dice while {@code selected} (or -1) is selected. */
+    public void roll(int selected) {
+        post(() -> humanRoll(selected));
+    }
+
+    /**
+     * Takes back actions up to and including the last human one. Refused
+     * once the game is over, since its result is already on the leaderboard.
+     */
+    public void undo() {
+        post(this::undoNow);
+    }
+
+    /** Plays undone actions forward again up to the next human one. */
+    public void redo() {
+        post(this::redoNow);
+    }
+
+    /** Hands BLUE to {@code bot}, or to a human if null; results name BLUE {@code name}. */
+    public void setBot(Tesselate_Bot bot, String name) {
+        post(() -> changeBot(bot, name));
+    }
+
+    /** Makes every diff list the edges that would complete a triangle now, or stops it. */
+    public void setHints(boolean on) {
+        post(() -> {
+            hints = on;
+            if (engine != null) publish();
+        });
+    }
+
+    /** Next diff, oldest first, or null. Consumer thread only. */
+    public Diff poll() {
+        return diffs.poll();
+    }
+
+    /**
+     * Called when {@link #poll} came back empty. Re-enables {@code onDiff}
+     * and returns true if the outbox is still empty, so the caller may stop
+     * polling until it runs; false if a diff slipped in meanwhile.
+     */
+    public boolean rearm() {
+        signalled.set(false);
+        return diffs.isEmpty();
+    }
+
+    private void post(Runnable command) {
+        if (!commands.offer(command)) {
+            LOG.log(System.Logger.Level.WARNING, "Game thread is behind; input dropped");
+            return;
+        }
+        LockSupport.unpark(thread);
+    }
+
+    // ---- Game thread --------------------------------------------------------------------------
+
+    private void run() {
+        while (true) {
+            Runnable r = commands.poll();
+            if (r == null) r = answers.poll();
+            if (r == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                LOG.log(System.Logger.Level.ERROR, "Game command failed", e);
+                resetDiff();
+            }
+        }
+    }
+
+    private void startGame(long seed, double spacing) {
+        botGeneration++;
+        botThinking = false;
+        resultRecorded = false;
+        actions.clear();
+        actionCount = 0;
+
+        // The board and the dice both come from one seed, which the replay records
+        Tesselate_Board layout = generateGeometricPattern(new Random(seed), spacing);
+        Tesselate_BoardAnalysis analysis = Tesselate_AnalysisCache.shared().get(layout,
+                Tesselate_Engine.MAX_EDGE_LENGTH, Tesselate_Engine.DOT_RADIUS);
+        if (engine == null) {
+            engine = new Tesselate_Engine(analysis, seed);
+            engine.setTimed(true);
+        } else {
+            // Reuse the engine's stores instead of allocating new ones every game
+            engine.reset(analysis, seed);
+        }
+        games++;
+        startReplay(seed, layout);
+        resetDiff();
+        newBoard = analysis;
+        select = NONE;
+        maybeStartBotTurn();
+        publish();
+    }
+
+    private static Tesselate_Board generateGeometricPattern(Random random, double spacing) {
+        double w = Tesselate_Board.WIDTH, h = Tesselate_Board.HEIGHT;
+
+        if (spacing > 0) {
+            double margin = 3 * Tesselate_Engine.DOT_RADIUS;
+            double bw = w - 2 * margin, bh = h - 2 * margin;
+            int count = Math.min(Tesselate_BoardGenerator.countFor(bw, bh, spacing),
+                    Tesselate_BoardGenerator.maxCount(bw, bh));
+            return Tesselate_BoardGenerator.generate(count, margin, margin, bw, bh, random.nextLong());
+        }
+
+        // Randomly select one of 10 patterns
+        int pattern = random.nextInt(Tesselate_Patterns.COUNT);
+        return Tesselate_Patterns.create(pattern, w / 2, h / 2);
+    }
+
+    private boolean humanMayMove() {
+        return engine.edgesRemaining() > 0 && !engine.isGameOver() && !isBotTurn();
+    }
+
+    private void humanEdge(int a, int b, long clickNanos) {
+        if (engine == null) return;
+        if (!humanMayMove() || !playEdge(a, b)) {
+            select = NONE;
+            publish();
+            return;
+        }
+        pushAction(new Action(0, a, b, true, a, engine.lastClaimedCount()));
+        this.clickNanos = clickNanos;
+
+        // Keep the second dot selected if there are remaining edges
+        select = engine.edgesRemaining() > 0 && !engine.isGameOver() ? b : NONE;
+        maybeStartBotTurn();
+        publish();
+    }
+
+    private void humanRoll(int selected) {
+        if (engine == null || engine.edgesRemaining() > 0 || engine.isGameOver() || isBotTurn()) return;
+        roll(true, selected);
+        publish();
+    }
+
+    private void undoNow() {
+        if (actionCount == 0 || resultRecorded) return;
+        botGeneration++; // drop an answer the bot may still be working on
+        botThinking = false;
+        select = NONE;
+        Action x;
+        do {
+            x = actions.get(--actionCount);
+            engine.undo();
+            recordUndo();
+            if (x.face == 0) op(OP_REMOVE, x.triangles);
+        } while (!x.human && actionCount > 0);
+        if (x.human && x.selectedBefore >= 0) select = x.selectedBefore;
+        maybeStartBotTurn();
+        publish();
+    }
+
+    private void redoNow() {
+        if (actionCount == actions.size()) return;
+        botGeneration++;
+        botThinking = false;
+        select = NONE;
+        do {
+            Action x = actions.get(actionCount++);
+            if (x.face > 0) {
+                engine.applyRoll(x.face);
+                recordRoll(x.face);
+            } else {
+                playEdge(x.a, x.b);
+            }
+        } while (actionCount < actions.size() && !actions.get(actionCount).human);
+        maybeStartBotTurn();
+        publish();
+    }
+
+    private void changeBot(Tesselate_Bot bot, String name) {
+        botGeneration++;
+        botThinking = false;
+        this.bot = bot;
+        this.blueName = name;
+        if (engine == null) return;
+        maybeStartBotTurn();
+        publish();
+    }
+
+    private void roll(boolean human, int selected) {
+        int face = engine.rollDice();
+        recordRoll(face);
+        pushAction(new Action(face, -1, -1, human, selected, 0));
+    }
+
+    // A new action makes the undone ones unreachable
+    private void pushAction(Action x) {
+        actions.subList(actionCount, actions.size()).clear();
+        actions.add(x);
+        actionCount++;
+    }
+
+    // Applies the edge for the current player and queues its drawing, timing each stage; false if refused
+    private boolean playEdge(int a, int b) {
+        Tesselate_Metrics.MoveEvent event = new Tesselate_Metrics.MoveEvent();
+        event.begin();
+        Tesselate_Engine.Player mover = engine.current();
+        long t0 = System.nanoTime();
+        Tesselate_Engine.MoveResult result = engine.check(a, b);
+        long t1 = System.nanoTime();
+        Tesselate_Metrics.record(Tesselate_Metrics.Stage.VALIDATE, t1 - t0);
+        if (result != Tesselate_Engine.MoveResult.OK) {
+            Tesselate_Metrics.rejected();
+            LOG.log(System.Logger.Level.DEBUG, () -> "Edge " + a + "-" + b + " refused: " + result
+                    + (result == Tesselate_Engine.MoveResult.TOO_LONG ? " (" + engine.board().distance(a, b) + ")" : ""));
+            commit(event, a, b, result);
+            return false;
+        }
+
+        engine.applyMove(a, b); // checks again, which is one table lookup for a legal edge
+        long t2 = System.nanoTime();
+        Tesselate_Metrics.record(Tesselate_Metrics.Stage.CLAIM, engine.lastClaimNanos());
+        Tesselate_Metrics.record(Tesselate_Metrics.Stage.APPLY, t2 - t1 - engine.lastClaimNanos());
+        recordEdge(a, b);
+        op(OP_EDGE, a, b, mover.ordinal());
+        int claimed = engine.lastClaimedCount();
+        if (claimed > 0) {
+            op(OP_TRIANGLES, mover.ordinal(), claimed);
+            for (int i = 0; i < claimed; i++) {
+                op(engine.lastClaimed(i, 0), engine.lastClaimed(i, 1), engine.lastClaimed(i, 2));
+            }
+        }
+        commit(event, a, b, result);
+        return true;
+    }
+
+    private void commit(Tesselate_Metrics.MoveEvent event, int a, int b, Tesselate_Engine.MoveResult result) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.a = a;
+        event.b = b;
+        event.result = result.name();
+        event.triangles = result == Tesselate_Engine.MoveResult.OK ? engine.lastClaimedCount() : 0;
+        event.commit();
+    }
+
+    private boolean isBotTurn() {
+        return bot != null && engine.current() == Tesselate_Engine.Player.BLUE;
+    }
+
+    /** Starts thinking about the next bot edge if it is the bot's move and it is idle. */
+    private void maybeStartBotTurn() {
+        if (!isBotTurn() || engine.isGameOver() || botThinking) return;
+        select = NONE;
+        if (engine.edgesRemaining() == 0) roll(false, -1);
+
+        botThinking = true;
+        final int generation = botGeneration;
+        final Tesselate_Bot thinker = bot;
+        final Tesselate_Engine snapshot = engine.copy();
+        CompletableFuture.supplyAsync(() -> {
+                    long start = System.nanoTime();
+                    int move = thinker.chooseMove(snapshot);
+                    Tesselate_Metrics.since(Tesselate_Metrics.Stage.BOT, start);
+                    return move;
+                }, botThread)
+                // Always on the bot thread, the answer queue's only producer; whenComplete would run an
+                // answer that is already in (a book hit) here on the game thread
+                .whenCompleteAsync((move, err) -> {
+                    if (!answers.offer(() -> botAnswered(generation, move, err))) {
+                        LOG.log(System.Logger.Level.WARNING, "Bot answer dropped");
+                        return;
+                    }
+                    LockSupport.unpark(thread);
+                }, botThread);
+    }
+
+    // A failed or refused answer is replaced by the first legal edge, so the game never waits on the bot
+    private void botAnswered(int generation, Integer move, Throwable err) {
+        if (generation != botGeneration) return;
+        botThinking = false;
+        if (err != null || !playBotEdge(move)) {
+            if (err != null) LOG.log(System.Logger.Level.ERROR, "Bot failed; playing the first legal edge instead", err);
+            else LOG.log(System.Logger.Level.WARNING, "Bot chose unplayable edge " + move + "; playing the first legal edge instead");
+            playBotEdge(engine.legalMove(0));
+        }
+        maybeStartBotTurn();
+        publish();
+    }
+
+    // Plays candidate c for the bot; false if it is not a playable edge
+    private boolean playBotEdge(Integer c) {
+        Tesselate_BoardAnalysis analysis = engine.analysis();
+        if (c == null || c < 0 || c >= analysis.candidateCount()) return false;
+        int a = analysis.candidateU(c), b = analysis.candidateV(c);
+        if (!playEdge(a, b)) return false;
+        pushAction(new Action(0, a, b, false, -1, engine.lastClaimedCount()));
+        return true;
+    }
+
+    // The engine's threats as (a, b, triangles); O(threats) through its opportunity index
+    private int[] hints() {
+        int[] out = new int[engine.threatCount() * 3];
+        Tesselate_BoardAnalysis analysis = engine.analysis();
+        int i = 0;
+        for (int c = engine.nextThreat(0); c >= 0; c = engine.nextThreat(c + 1)) {
+            out[i++] = analysis.candidateU(c);
+            out[i++] = analysis.candidateV(c);
+            out[i++] = engine.closes(c);
+        }
+        return out;
+    }
+
+    private void op(int... values) {
+        if (opsSize + values.length > ops.length) ops = Arrays.copyOf(ops, Math.max(ops.length * 2, opsSize + values.length));
+        System.arraycopy(values, 0, ops, opsSize, values.length);
+        opsSize += values.length;
+    }
+
+    private void resetDiff() {
+        opsSize = 0;
+        newBoard = null;
+        select = KEEP;
+        clickNanos = 0;
+    }
+
+    // Hands the changes since the last diff to the window
+    private void publish() {
+        if (engine.isGameOver()) {
+            select = NONE;
+            if (!resultRecorded) recordResult();
+        }
+        Diff d = new Diff(this);
+        resetDiff();
+        while (!diffs.offer(d)) {
+            LockSupport.parkNanos(100_000); // the window is a full outbox behind; let it catch up
+        }
+        if (signalled.compareAndSet(false, true)) onDiff.run();
+    }
+
+    // Called once per game, when it ends
+    private void recordResult() {
+        resultRecorded = true;
+        if (leaderboard == null || engine.edgeCount() == 0) return; // nothing was played
+        try {
+            synchronized (leaderboard) {
+                leaderboard.record(playerName, blueName,
+                        engine.score(Tesselate_Engine.Player.RED), engine.score(Tesselate_Engine.Player.BLUE));
+            }
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Result not saved: " + e.getMessage());
+        }
+    }
+
+    // With -Dtessellate.replays=DIR every game is written to DIR as it is played; see Tesselate_Replay
+    private void startReplay(long seed, Tesselate_Board layout) {
+        closeReplay();
+        if (REPLAY_DIR == null) return;
+        try {
+            Path dir = Files.createDirectories(Path.of(REPLAY_DIR));
+            String name = String.format("game-%tY%<tm%<td-%<tH%<tM%<tS-%016x.replay", new Date(), seed);
+            replay = Tesselate_ReplayWriter.create(dir.resolve(name), seed, layout);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Replay not recorded: " + e.getMessage());
+        }
+    }
+
+    private void recordRoll(int face) {
+        if (replay == null) return;
+        try {
+            replay.roll(face);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Replay stopped: " + e.getMessage());
+            closeReplay();
+        }
+    }
+
+    private void recordUndo() {
+        if (replay == null) return;
+        try {
+            replay.undo();
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Replay stopped: " + e.getMessage());
+            closeReplay();
+        }
+    }
+
+    private void recordEdge(int a, int b) {
+        if (replay == null) return;
+        try {
+            replay.edge(a, b);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Replay stopped: " + e.getMessage());
+            closeReplay();
+        }
+    }
+
+    private void closeReplay() {
+        if (replay == null) return;
+        try {
+            replay.close();
+        } catch (IOException ignored) {
+            // every record is already written
+        }
+        replay = null;
+    }
+}
@@ -0,0 +1,101 @@
+import java.math.BigDecimal;
+
+/**
+ * Plane geometry used by the rules. Points are passed as raw coordinates
+ * so the hot path allocates nothing.
+ *
+ * Crossing tests use {@link #orientation}, which is exact: the double
+ * determinant is trusted only when it is larger than its worst-case
+ * rounding error (Shewchuk's bound for orient2d), and the rare
+ * near-collinear case is redone in BigDecimal, which represents every
+ * double exactly. Collinear, touching and crossing segments are therefore
+ * always told apart, whatever the layout, at about the cost of the plain
+ * double test.
+ */
+public final class Tesselate_Geometry {
+
+    private static final double EPSILON = Math.ulp(1.0) / 2; // 2^-53, the unit roundoff
+    private static final double ORIENT_ERROR_BOUND = (3 + 16 * EPSILON) * EPSILON;
+
+    private Tesselate_Geometry() {}
+
+    /**
+     * Whether the segments cross at a point inside both, or are collinear
+     * and overlap along some length. Segments that only touch (one ends on
+     * the other, or they meet end to end) do not intersect.
+     */
+    public static boolean segmentsIntersect(double x1, double y1, double x2, double y2,
+                                            double x3, double y3, double x4, double y4) {
+        // Disjoint bounding boxes settle most pairs a grid query hands us
+        if (Math.max(x1, x2) < Math.min(x3, x4) || Math.max(x3, x4) < Math.min(x1, x2)
+                || Math.max(y1, y2) < Math.min(y3, y4) || Math.max(y3, y4) < Math.min(y1, y2)) {
+            return false;
+        }
+        int o3 = orientation(x1, y1, x2, y2, x3, y3);
+        int o4 = orientation(x1, y1, x2, y2, x4, y4);
+        if (o3 == o4 && o3 != 0) return false;
+        int o1 = orientation(x3, y3, x4, y4, x1, y1);
+        int o2 = orientation(x3, y3, x4, y4, x2, y2);
+        if (o1 == 0 && o2 == 0 && o3 == 0 && o4 == 0) {
+            return collinearOverlap(x1, y1, x2, y2, x3, y3, x4, y4);
+        }
+        return o1 * o2 < 0 && o3 * o4 < 0;
+    }
+
+    /**
+     * Exact sign of the turn a -> b -> c: 1 if c is to the left of the
+     * directed line a -> b (counter-clockwise in y-up coordinates), -1 if to
+     * the right, 0 if the three points are exactly collinear.
+     */
+    public static int orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        double left = (ax - cx) * (by - cy);
+        double right = (ay - cy) * (bx - cx);
+        double det = left - right;
+        double bound = ORIENT_ERROR_BOUND * (Math.abs(left) + Math.abs(right));
+        if (det > bound) return 1;
+        if (-det > bound) return -1;
+        return orientationExact(ax, ay, bx, by, cx, cy);
+    }
+
+    // Only reached when the double determinant is within its error bound of zero
+    private static int orientationExact(double ax, double ay, double bx, double by, double cx, double cy) {
+        BigDecimal x = new BigDecimal(cx), y = new BigDecimal(cy);
+        BigDecimal left = new BigDecimal(ax).subtract(x).multiply(new BigDecimal(by).subtract(y));
+        BigDecimal right = new BigDecimal(ay).subtract(y).multiply(new BigDecimal(bx).subtract(x));
+        return left.compareTo(right);
+    }
+
+    // Collinear segments overlap if their extents along the longer axis overlap by more than a point
+    private static boolean collinearOverlap(double x1, double y1, double x2, double y2,
+                                            double x3, double y3, double x4, double y4) {
+        boolean alongX = Math.max(Math.abs(x2 - x1), Math.abs(x4 - x3)) >= Math.max(Math.abs(y2 - y1), Math.abs(y4 - y3));
+        double a1 = alongX ? x1 : y1, a2 = alongX ? x2 : y2;
+        double b1 = alongX ? x3 : y3, b2 = alongX ? x4 : y4;
+        return Math.max(Math.min(a1, a2), Math.min(b1, b2)) < Math.min(Math.max(a1, a2), Math.max(b1, b2));
+    }
+
+    // Calculate the shortest distance from a point to a line segment
+    public static double distanceToSegment(double x0, double y0,
+                                           double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+
+        // If the line segment is actually a point
+        if (dx == 0 && dy == 0) {
+            return Math.sqrt((x0 - x1) * (x0 - x1) + (y0 - y1) * (y0 - y1));
+        }
+
+        // Calculate the parameter t that represents the projection of the point onto the line
+        double t = ((x0 - x1) * dx + (y0 - y1) * dy) / (dx * dx + dy * dy);
+
+        // Clamp t to [0, 1] to handle the segment (not the infinite line)
+        t = Math.max(0, Math.min(1, t));
+
+        // Calculate the closest point on the segment
+        double closestX = x1 + t * dx;
+        double closestY = y1 + t * dy;
+
+        // Return the distance from the point to the closest point on the segment
+        return Math.sqrt((x0 - closestX) * (x0 - closestX) + (y0 - closestY) * (y0 - closestY));
+    }
+}
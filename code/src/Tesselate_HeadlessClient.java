@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client without a window, for tests and load runs against
+ * {@link Tesselate_Server}.
+ *
+ * A client keeps its own engine in step with the server by applying every
+ * START, ROLLED and EDGE frame it receives, exactly as a UI client would.
+ * The main method opens many games at once over loopback, plays them with
+ * random moves from a small thread pool and reports round-trip times and
+ * any client whose engine disagreed with the server.
+ *
+ * Usage: java Tesselate_HeadlessClient [host | --local] [port] [games] [threads]
+ */
+public final class Tesselate_HeadlessClient implements AutoCloseable {
+
+    private final SocketChannel ch;
+    private final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+    private final ByteBuffer out = ByteBuffer.allocate(1 + Tesselate_Protocol.MAX_FRAME);
+
+    private int gameId;
+    private int seat;
+    private Tesselate_Engine engine;
+    private boolean started;
+    private int seq;              // next action number
+    private int lastReject = -1;  // reason of the last REJECT, or -1
+    private boolean desync;       // the server sent an action this engine refused
+
+    private Tesselate_HeadlessClient(SocketChannel ch) {
+        this.ch = ch;
+        in.flip();
+    }
+
+    public static Tesselate_HeadlessClient connect(String host, int port) throws IOException {
+        SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+        ch.socket().setTcpNoDelay(true);
+        return new Tesselate_HeadlessClient(ch);
+    }
+
+    public int gameId() { return gameId; }
+    public int seat() { return seat; }
+    public Tesselate_Engine engine() { return engine; }
+    public boolean started() { return started; }
+    public int seq() { return seq; }
+    public int lastReject() { return lastReject; }
+    public boolean desync() { return desync; }
+
+    /** Joins a game (0 for a new one) and waits for the welcome and the game so far. */
+    public void join(int game, int pattern) throws IOException {
+        out.clear();
+        Tesselate_Protocol.join(out, game, pattern);
+        send();
+        while (engine == null) poll();
+        // The catch-up frames were sent together with WELCOME; apply what is already here
+        while (Tesselate_Protocol.hasFrame(in)) poll();
+    }
+
+    public void sendRoll() throws IOException {
+        out.clear();
+        Tesselate_Protocol.roll(out, seq);
+        send();
+    }
+
+    public void sendMove(int a, int b) throws IOException {
+        out.clear();
+        Tesselate_Protocol.move(out, seq, a, b);
+        send();
+    }
+
+    /** Reads frames until the game has reached action {@code target} or a REJECT arrives; false on reject. */
+    public boolean awaitSeq(int target) throws IOException {
+        lastReject = -1;
+        while (seq < target) {
+            if (poll() == Tesselate_Protocol.REJECT) return false;
+        }
+        return true;
+    }
+
+    /** Reads until the game has started. */
+    public void awaitStart() throws IOException {
+        while (!started) poll();
+    }
+
+    /** Blocks for one frame, applies it and returns its type. */
+    public byte poll() throws IOException {
+        while (!Tesselate_Protocol.hasFrame(in)) {
+            in.compact();
+            int n = ch.read(in);
+            in.flip();
+            if (n < 0) throw new IOException("server closed the connection");
+        }
+        ByteBuffer body = Tesselate_Protocol.nextFrame(in);
+        byte type = body.get();
+        switch (type) {
+            case Tesselate_Protocol.WELCOME: {
+                gameId = Tesselate_Protocol.getVarint(body);
+                seat = Tesselate_Protocol.getVarint(body);
+                int pattern = Tesselate_Protocol.getVarint(body);
+                double cx = body.getDouble(), cy = body.getDouble();
+                engine = new Tesselate_Engine(Tesselate_Patterns.create(pattern, cx, cy), 0);
+                break;
+            }
+            case Tesselate_Protocol.START:
+                started = true;
+                break;
+            case Tesselate_Protocol.ROLLED: {
+                int s = Tesselate_Protocol.getVarint(body);
+                int face = Tesselate_Protocol.getVarint(body);
+                if (s != seq || engine.edgesRemaining() > 0) desync = true;
+                else engine.applyRoll(face);
+                seq = s + 1;
+                break;
+            }
+            case Tesselate_Protocol.EDGE: {
+                int s = Tesselate_Protocol.getVarint(body);
+                int a = Tesselate_Protocol.getVarint(body);
+                int b = Tesselate_Protocol.getVarint(body);
+                if (s != seq || engine.applyMove(a, b) != Tesselate_Engine.MoveResult.OK) desync = true;
+                seq = s + 1;
+                break;
+            }
+            case Tesselate_Protocol.REJECT:
+                Tesselate_Protocol.getVarint(body);
+                lastReject = Tesselate_Protocol.getVarint(body);
+                break;
+            default:
+                break; // newer server; skip what we do not know
+        }
+        return type;
+    }
+
+    private void send() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) ch.write(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "--local";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : Tesselate_Protocol.DEFAULT_PORT;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+
+        Tesselate_Server server = null;
+        if (host.equals("--local")) {
+            server = new Tesselate_Server(0);
+            port = server.port();
+            host = "127.0.0.1";
+            Thread t = new Thread(server, "tesselate-server");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        // Open every game before playing any, so the server holds them all at once
+        Tesselate_HeadlessClient[][] pairs = new Tesselate_HeadlessClient[games][2];
+        for (int g = 0; g < games; g++) {
+            Tesselate_HeadlessClient red = connect(host, port);
+            red.join(0, -1);
+            Tesselate_HeadlessClient blue = connect(host, port);
+            blue.join(red.gameId(), -1);
+            pairs[g][0] = red;
+            pairs[g][1] = blue;
+        }
+        System.out.println("Opened " + games + " games");
+
+        long[][] rtts = new long[games][];
+        int[] rttCounts = new int[games];
+        AtomicInteger desyncs = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int g = 0; g < games; g++) {
+            final int game = g;
+            pool.execute(() -> {
+                rtts[game] = new long[64];
+                try {
+                    rttCounts[game] = play(pairs[game], new SplittableRandom(game), rtts, game);
+                    if (pairs[game][0].desync() || pairs[game][1].desync()) desyncs.incrementAndGet();
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - start;
+
+        int total = 0;
+        for (int c : rttCounts) total += c;
+        long[] all = new long[total];
+        int k = 0;
+        for (int g = 0; g < games; g++) {
+            System.arraycopy(rtts[g], 0, all, k, rttCounts[g]);
+            k += rttCounts[g];
+        }
+        Arrays.sort(all);
+        double mean = 0;
+        for (long v : all) mean += v;
+        mean = total == 0 ? 0 : mean / total / 1000;
+        System.out.printf("%d games, %d actions in %d ms; round trip mean %.1f us, p50 %.1f us, p99 %.1f us;"
+                        + " %d desynced, %d failed%n",
+                games, total, elapsed / 1_000_000, mean, percentile(all, 0.50), percentile(all, 0.99),
+                desyncs.get(), failures.get());
+
+        for (Tesselate_HeadlessClient[] p : pairs) {
+            p[0].close();
+            p[1].close();
+        }
+        if (server != null) server.close();
+    }
+
+    // Plays one game with random moves; returns the number of round trips recorded
+    private static int play(Tesselate_HeadlessClient[] seats, SplittableRandom rnd, long[][] rtts, int game)
+            throws IOException {
+        seats[0].awaitStart();
+        seats[1].awaitStart();
+        int n = 0;
+        while (!seats[0].engine().isGameOver()) {
+            Tesselate_HeadlessClient mover = seats[seats[0].engine().current().ordinal()];
+            Tesselate_HeadlessClient other = seats[1 - mover.seat()];
+            Tesselate_Engine e = mover.engine();
+            int target = mover.seq() + 1;
+            long t0 = System.nanoTime();
+            if (e.edgesRemaining() == 0) {
+                mover.sendRoll();
+            } else {
+                int c = e.legalMove(rnd.nextInt(e.legalMoveCount()));
+                mover.sendMove(e.analysis().candidateU(c), e.analysis().candidateV(c));
+            }
+            if (!mover.awaitSeq(target)) throw new IOException("server rejected a legal action: " + mover.lastReject());
+            long rtt = System.nanoTime() - t0;
+            other.awaitSeq(target);
+            if (n == rtts[game].length) rtts[game] = Arrays.copyOf(rtts[game], n * 2);
+            rtts[game][n++] = rtt;
+        }
+        return n;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1000.0;
+    }
+}
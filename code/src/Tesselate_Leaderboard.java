@@ -0,0 +1,445 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Local leaderboard: every finished game, kept in one file, and players
+ * ranked by Elo rating.
+ *
+ * The file is append-only. A game is a few varints (both players and
+ * both scores), and a player's name is written once, the first time the
+ * player appears. Once {@link #COMPACT_AFTER} games have piled up, the
+ * file is rewritten as one totals record per player, so opening it costs
+ * the number of players plus at most that many games, however many games
+ * were ever played. A record cut off by a crash is dropped on open.
+ *
+ * Ranks come from an indexable skip list (each link knows how many
+ * players it jumps over), so the rank of a player, a page of the table
+ * and an update after a game are all O(log players).
+ *
+ * Usage: java Tesselate_Leaderboard [file] [count]
+ */
+public final class Tesselate_Leaderboard implements Closeable {
+
+    public static final double START_RATING = 1500;
+    private static final double K_FACTOR = 32;
+    private static final int COMPACT_AFTER = 100_000; // games since the last rewrite
+    private static final int MAX_NAME = 64;           // UTF-8 bytes
+
+    static final int MAGIC = 0x544c4244; // "TLBD"
+    static final int VERSION = 1;
+    private static final int HEADER = 8;
+
+    // Record types
+    private static final byte PLAYER = 1; // id, name length, name
+    private static final byte TOTALS = 2; // id, games, wins, draws, points (8 bytes), rating (8 bytes)
+    private static final byte GAME = 3;   // red id, blue id, red score, blue score
+
+    private final Path file;
+    private FileChannel ch;
+    private final ByteBuffer buf = ByteBuffer.allocate(1 + 5 + 5 + MAX_NAME + 16);
+    private final Map<String, Standing> byName = new HashMap<>();
+    private final List<Standing> byId = new ArrayList<>();
+    private final RankIndex index = new RankIndex();
+    private int gamesSinceCompaction;
+
+    /** One player's record. Read-only outside this class. */
+    public static final class Standing {
+        final int id;
+        final String name;
+        int games;
+        int wins;
+        int draws;
+        long points;
+        double rating = START_RATING;
+
+        Standing(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public String name() { return name; }
+        public int games() { return games; }
+        public int wins() { return wins; }
+        public int draws() { return draws; }
+        public int losses() { return games - wins - draws; }
+        public long points() { return points; }
+        public double rating() { return rating; }
+    }
+
+    private Tesselate_Leaderboard(Path file) {
+        this.file = file;
+    }
+
+    /** Opens the leaderboard, creating the file if it does not exist. */
+    public static Tesselate_Leaderboard open(Path file) throws IOException {
+        Tesselate_Leaderboard board = new Tesselate_Leaderboard(file);
+        board.load();
+        return board;
+    }
+
+    public int size() { return byId.size(); }
+
+    public Standing get(String name) { return byName.get(name); }
+
+    /** 1-based rank of a player, or -1 if the player has never played. */
+    public int rank(String name) {
+        Standing s = byName.get(name);
+        return s == null ? -1 : index.rank(s);
+    }
+
+    /** Up to {@code count} players from rank {@code first} (1-based) down. */
+    public List<Standing> page(int first, int count) {
+        return index.page(first, count);
+    }
+
+    public List<Standing> top(int count) {
+        return page(1, count);
+    }
+
+    /** Appends a finished game and updates both players' ratings. */
+    public void record(String red, String blue, int redScore, int blueScore) throws IOException {
+        if (red.equals(blue)) throw new IllegalArgumentException("a player cannot play itself: " + red);
+        Standing r = player(red);
+        Standing b = player(blue);
+        buf.clear();
+        buf.put(GAME);
+        Tesselate_Protocol.putVarint(buf, r.id);
+        Tesselate_Protocol.putVarint(buf, b.id);
+        Tesselate_Protocol.putVarint(buf, redScore);
+        Tesselate_Protocol.putVarint(buf, blueScore);
+        append();
+
+        index.remove(r);
+        index.remove(b);
+        apply(r, b, redScore, blueScore);
+        index.insert(r);
+        index.insert(b);
+        if (++gamesSinceCompaction >= COMPACT_AFTER) compact();
+    }
+
+    /** Rewrites the file as one totals record per player. */
+    public void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+            block.putInt(MAGIC).putInt(VERSION);
+            for (Standing s : byId) {
+                if (block.remaining() < 2 * buf.capacity()) {
+                    drain(out, block);
+                }
+                putPlayer(block, s);
+                block.put(TOTALS);
+                Tesselate_Protocol.putVarint(block, s.id);
+                Tesselate_Protocol.putVarint(block, s.games);
+                Tesselate_Protocol.putVarint(block, s.wins);
+                Tesselate_Protocol.putVarint(block, s.draws);
+                block.putLong(s.points).putDouble(s.rating);
+            }
+            drain(out, block);
+            out.force(true);
+        }
+        ch.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ch.position(ch.size());
+        gamesSinceCompaction = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+    private void load() throws IOException {
+        ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = ch.size();
+        if (size == 0) {
+            buf.clear();
+            buf.putInt(MAGIC).putInt(VERSION);
+            append();
+            return;
+        }
+        if (size > Integer.MAX_VALUE) {
+            ch.close();
+            throw new IOException(file + " is too large for a leaderboard");
+        }
+        // Read, not mapped: a mapping outlives close() until it is collected, and Windows will not
+        // truncate or replace a mapped file
+        ByteBuffer in = ByteBuffer.allocate((int) size);
+        while (in.hasRemaining()) {
+            if (ch.read(in) < 0) {
+                ch.close();
+                throw new IOException(file + " shrank while it was read");
+            }
+        }
+        in.flip();
+        if (size < HEADER || in.getInt() != MAGIC) {
+            ch.close();
+            throw new IOException(file + " is not a leaderboard");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            ch.close();
+            throw new IOException(file + ": unsupported version " + version);
+        }
+        long good = HEADER;
+        try {
+            while (in.hasRemaining()) {
+                read(in);
+                good = in.position();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // The last write was cut off; appends continue after the last whole record
+            ch.truncate(good);
+        }
+        ch.position(good);
+
+        for (Standing s : byId) index.insert(s);
+        if (gamesSinceCompaction >= COMPACT_AFTER) compact();
+    }
+
+    // Reads every field of a record before changing anything, so a cut-off record has no effect
+    private void read(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case PLAYER: {
+                int id = Tesselate_Protocol.getVarint(in);
+                int len = Tesselate_Protocol.getVarint(in);
+                if (id != byId.size() || len > MAX_NAME) throw new IllegalArgumentException("bad player");
+                byte[] name = new byte[len];
+                in.get(name);
+                Standing s = new Standing(id, new String(name, StandardCharsets.UTF_8));
+                byId.add(s);
+                byName.put(s.name, s);
+                break;
+            }
+            case TOTALS: {
+                Standing s = standing(Tesselate_Protocol.getVarint(in));
+                int games = Tesselate_Protocol.getVarint(in);
+                int wins = Tesselate_Protocol.getVarint(in);
+                int draws = Tesselate_Protocol.getVarint(in);
+                long points = in.getLong();
+                double rating = in.getDouble();
+                s.games = games;
+                s.wins = wins;
+                s.draws = draws;
+                s.points = points;
+                s.rating = rating;
+                break;
+            }
+            case GAME: {
+                Standing r = standing(Tesselate_Protocol.getVarint(in));
+                Standing b = standing(Tesselate_Protocol.getVarint(in));
+                int redScore = Tesselate_Protocol.getVarint(in);
+                int blueScore = Tesselate_Protocol.getVarint(in);
+                apply(r, b, redScore, blueScore);
+                gamesSinceCompaction++;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown record " + type);
+        }
+    }
+
+    private Standing standing(int id) {
+        if (id < 0 || id >= byId.size()) throw new IllegalArgumentException("unknown player " + id);
+        return byId.get(id);
+    }
+
+    // Finds a player, writing the name record the first time it is seen
+    private Standing player(String name) throws IOException {
+        Standing s = byName.get(name);
+        if (s != null) return s;
+        if (name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME) {
+            throw new IllegalArgumentException("name longer than " + MAX_NAME + " bytes: " + name);
+        }
+        s = new Standing(byId.size(), name);
+        buf.clear();
+        putPlayer(buf, s);
+        append();
+        byId.add(s);
+        byName.put(name, s);
+        index.insert(s);
+        return s;
+    }
+
+    private static void putPlayer(ByteBuffer out, Standing s) {
+        byte[] name = s.name.getBytes(StandardCharsets.UTF_8);
+        out.put(PLAYER);
+        Tesselate_Protocol.putVarint(out, s.id);
+        Tesselate_Protocol.putVarint(out, name.length);
+        out.put(name);
+    }
+
+    private static void apply(Standing r, Standing b, int redScore, int blueScore) {
+        double expected = 1 / (1 + Math.pow(10, (b.rating - r.rating) / 400));
+        double result = redScore > blueScore ? 1 : redScore == blueScore ? 0.5 : 0;
+        r.rating += K_FACTOR * (result - expected);
+        b.rating -= K_FACTOR * (result - expected);
+        r.games++;
+        b.games++;
+        r.points += redScore;
+        b.points += blueScore;
+        if (redScore > blueScore) r.wins++;
+        else if (blueScore > redScore) b.wins++;
+        else {
+            r.draws++;
+            b.draws++;
+        }
+    }
+
+    private void append() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    private static void drain(FileChannel out, ByteBuffer block) throws IOException {
+        block.flip();
+        while (block.hasRemaining()) out.write(block);
+        block.clear();
+    }
+
+    /**
+     * Skip list over the players in rank order (rating, then id). Each link
+     * stores its span, the number of rank positions it skips, so walking
+     * the list also counts ranks.
+     */
+    private static final class RankIndex {
+        private static final int MAX_LEVEL = 32;
+
+        private final Node head = new Node(null, MAX_LEVEL);
+        private final Node[] update = new Node[MAX_LEVEL];
+        private final int[] passed = new int[MAX_LEVEL];
+        private final SplittableRandom random = new SplittableRandom(0x5eed); // same shape on every run
+        private int level = 1;
+        private int size;
+
+        private static final class Node {
+            final Standing s;
+            final Node[] next;
+            final int[] span;
+
+            Node(Standing s, int height) {
+                this.s = s;
+                next = new Node[height];
+                span = new int[height];
+            }
+        }
+
+        private static boolean before(Standing a, Standing b) {
+            return a.rating > b.rating || (a.rating == b.rating && a.id < b.id);
+        }
+
+        // Fills update[] with the last node before s on every level and passed[] with its rank
+        private void find(Standing s) {
+            Node x = head;
+            int pos = 0;
+            for (int i = level - 1; i >= 0; i--) {
+                while (x.next[i] != null && before(x.next[i].s, s)) {
+                    pos += x.span[i];
+                    x = x.next[i];
+                }
+                update[i] = x;
+                passed[i] = pos;
+            }
+        }
+
+        void insert(Standing s) {
+            find(s);
+            int pos = passed[0];
+            int height = 1;
+            while (height < MAX_LEVEL && random.nextInt(4) == 0) height++;
+            if (height > level) {
+                for (int i = level; i < height; i++) {
+                    update[i] = head;
+                    passed[i] = 0;
+                    head.span[i] = size;
+                }
+                level = height;
+            }
+            Node n = new Node(s, height);
+            for (int i = 0; i < height; i++) {
+                n.next[i] = update[i].next[i];
+                update[i].next[i] = n;
+                n.span[i] = update[i].span[i] - (pos - passed[i]);
+                update[i].span[i] = pos - passed[i] + 1;
+            }
+            for (int i = height; i < level; i++) update[i].span[i]++;
+            size++;
+        }
+
+        // s must still have the rating it was inserted with
+        void remove(Standing s) {
+            find(s);
+            Node x = update[0].next[0];
+            if (x == null || x.s != s) return;
+            for (int i = 0; i < level; i++) {
+                if (update[i].next[i] == x) {
+                    update[i].span[i] += x.span[i] - 1;
+                    update[i].next[i] = x.next[i];
+                } else {
+                    update[i].span[i]--;
+                }
+            }
+            while (level > 1 && head.next[level - 1] == null) level--;
+            size--;
+        }
+
+        int rank(Standing s) {
+            Node x = head;
+            int r = 0;
+            for (int i = level - 1; i >= 0; i--) {
+                while (x.next[i] != null && !before(s, x.next[i].s)) {
+                    r += x.span[i];
+                    x = x.next[i];
+                }
+                if (x.s == s) return r;
+            }
+            return -1;
+        }
+
+        List<Standing> page(int first, int count) {
+            List<Standing> out = new ArrayList<>(Math.max(0, Math.min(count, size - first + 1)));
+            if (first < 1 || first > size) return out;
+            // Jump to rank first - 1 through the spans, then walk the bottom level
+            Node x = head;
+            int r = 0;
+            for (int i = level - 1; i >= 0; i--) {
+                while (x.next[i] != null && r + x.span[i] < first) {
+                    r += x.span[i];
+                    x = x.next[i];
+                }
+            }
+            for (x = x.next[0]; x != null && out.size() < count; x = x.next[0]) out.add(x.s);
+            return out;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Path.of(args.length > 0 ? args[0] : "tessellate.leaderboard");
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long t0 = System.nanoTime();
+        try (Tesselate_Leaderboard board = open(file)) {
+            System.out.printf("%d players (opened in %.1f ms)%n", board.size(), (System.nanoTime() - t0) / 1e6);
+            int rank = 1;
+            for (Standing s : board.top(count)) {
+                System.out.printf("%4d  %-24s %6.0f  %d-%d-%d, %d points%n", rank++, s.name(), s.rating(),
+                        s.wins(), s.draws(), s.losses(), s.points());
+            }
+        }
+    }
+}
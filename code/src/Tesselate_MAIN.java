@@ -6,8 +6,11 @@ import javafx.stage.Stage;
 
 public class Tesselate_MAIN extends Application {
 
+    private static final System.Logger LOG = System.getLogger(Tesselate_MAIN.class.getName());
+
     public static void main(String[] args) {
-        System.out.println("Game: tesselate launched");
+        LOG.log(System.Logger.Level.INFO, "Game: tesselate launched");
+        Tesselate_Metrics.registerIfEnabled();
         launch(args);
     }
 
@@ -20,7 +23,7 @@ public class Tesselate_MAIN extends Application {
         try {
             scene.getStylesheets().add(getClass().getResource("Tesselate_MAIN_style.css").toExternalForm());
         } catch(Exception e) {
-            System.out.println("CSS file not found: " + e.getMessage());
+            LOG.log(System.Logger.Level.WARNING, "CSS file not found: " + e.getMessage());
         }
         
         stage.setTitle("Triangle Connect — Basic Prototype");
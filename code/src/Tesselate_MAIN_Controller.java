@@ -1,596 +1,381 @@
+import javafx.animation.Animation;
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.geometry.Point2D;
-import javafx.scene.Node;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
-import javafx.scene.shape.Line;
-import javafx.scene.shape.Polygon;
+import javafx.util.Duration;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
- * Minimal rules:
- * - Two players alternate turns: RED then BLUE.
- * - Click "Roll Dice" to start/continue a turn. You get 1..6 edges for that turn.
- * - Click two different dots to draw one edge (if it doesn't exist).
- * - If that edge completes any triangle(s), they are scored immediately:
- *   RED triangles = 2 pts each; BLUE triangles = 1 pt each.
- * - Triangles are claimed once; no double scoring.
+ * Thin JavaFX view over a {@link Tesselate_GameThread}, which owns the
+ * {@link Tesselate_Engine} and every rule (see their class comments). This
+ * controller only tracks the dot the user has selected, posts moves to the
+ * game thread and draws the diffs it sends back with
+ * {@link Tesselate_BoardRenderer}. Diffs are applied in a batch on the
+ * next pulse, and the labels are written once per batch, so nothing on the
+ * FX thread waits for validation, scoring or a bot.
+ *
+ * BLUE can be handed to a {@link Tesselate_Bot}. The bot thinks on its own
+ * thread against a copy of the game, and its answer is played on the game
+ * thread, so the window stays responsive while it searches.
+ *
+ * Undo takes back actions through {@link Tesselate_Engine#undo()} and
+ * pops the same items off the renderer, back to and including the last
+ * human action, so a bot's reply goes with the move it answered. Redo
+ * plays them forward again until the next human action.
+ *
+ * Every stage of a move is timed into {@link Tesselate_Metrics}; the Stats
+ * button shows the figures over the board. Messages go to a
+ * {@link System.Logger}, and refused moves only at DEBUG, so nothing is
+ * printed while playing unless logging is turned up.
  */
 public class Tesselate_MAIN_Controller {
 
     // UI
     @FXML private Pane board;
     @FXML private Button rollBtn;
+    @FXML private Button undoBtn;
+    @FXML private Button redoBtn;
+    @FXML private ToggleButton statsBtn;
+    @FXML private ToggleButton hintsBtn;
     @FXML private Label currentPlayerLbl;
     @FXML private Label remainingLbl;
     @FXML private Label scoreRedLbl;
     @FXML private Label scoreBlueLbl;
+    @FXML private ComboBox<String> blueModeBox;
+    @FXML private ComboBox<String> boardModeBox;
 
     // Config
     // private static final int DOT_COUNT = 18;
-    private static final double DOT_RADIUS = 6;
+    private static final double DOT_RADIUS = Tesselate_Engine.DOT_RADIUS;
     // private static final double PADDING = 32;
-    private static final double MAX_EDGE_LENGTH = 250; // Maximum allowed edge length
+    private static final String PATTERNS = "Patterns";
+    private static final String[] DENSITY_NAMES = {"Random: sparse", "Random: medium", "Random: dense"};
+    private static final double[] DENSITY_SPACING = {110, 85, 65}; // average dot distance per density, board units
 
     // State
-    private enum Player { RED, BLUE }
-    private Player current = Player.RED;
-    private int edgesRemaining = 0;
-    private int scoreRed = 0;
-    private int scoreBlue = 0;
-
-    // Graph structures
-    private List<Point2D> points = new ArrayList<>();
-    private Map<Integer, Circle> dotNodes = new HashMap<>();
-    private Set<Edge> edges = new HashSet<>();
-    private Set<Tri> claimedTriangles = new HashSet<>();
+    // -Dtessellate.seed=N replays a whole session; every game gets its own seed from this
+    private final Random random = new Random(Long.getLong("tessellate.seed", System.nanoTime()));
+    private Tesselate_GameThread game;
+    private int gameNumber = 0;                 // what game.newGame returned last
+    private Tesselate_GameThread.Diff hud = null; // newest diff applied, null before the first game
+
+    // Leaderboard; RED is the local player, BLUE is named after the bot or is a guest
+    private static final String LEADERBOARD_FILE = "tessellate.leaderboard";
+    private static final String PLAYER_NAME = System.getProperty("tessellate.player", System.getProperty("user.name", "RED"));
+    private static final String GUEST_NAME = "Guest";
+    private final Tesselate_Leaderboard leaderboard = openLeaderboard();
+
+    // View
+    private Tesselate_BoardRenderer renderer;
+    private final Label statsOverlay = new Label();
+    private final Timeline statsRefresh = new Timeline(
+            new KeyFrame(Duration.millis(500), e -> statsOverlay.setText(Tesselate_Metrics.summary())));
+    // Drains the game thread's diffs once per pulse while any arrive, then stops until signalled
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            applyDiffs();
+        }
+    };
+
+    private static final System.Logger LOG = System.getLogger(Tesselate_MAIN_Controller.class.getName());
 
     // Selection
     private Integer firstSelected = null;
+    private int dragFrom = -1; // dot the pointer was pressed on, while the button is down
+
+    // Bot
+    private static final String HUMAN = "Human";
+    private static final String BOOK_FILE = "tessellate.book";
+    private final Tesselate_OpeningBook book = loadBook();
 
     @FXML
     private void initialize() {
-        // Wait for layout to complete before scattering dots
-        board.layoutBoundsProperty().addListener((obs, oldVal, newVal) -> {
-            if (points.isEmpty() && newVal.getWidth() > 0 && newVal.getHeight() > 0) {
-                resetBoard();
-            }
+        renderer = new Tesselate_BoardRenderer(board);
+        statsOverlay.getStyleClass().add("stats-overlay");
+        statsOverlay.setMouseTransparent(true);
+        statsOverlay.setVisible(false);
+        statsOverlay.relocate(8, 8);
+        board.getChildren().add(statsOverlay);
+        statsRefresh.setCycleCount(Animation.INDEFINITE);
+        board.setOnMouseMoved(e -> renderer.setHover(renderer.dotAt(e.getX(), e.getY())));
+        board.setOnMouseExited(e -> renderer.setHover(-1));
+        board.setOnMousePressed(e -> dragFrom = renderer.dotAt(e.getX(), e.getY()));
+        board.setOnMouseDragged(e -> {
+            renderer.setHover(renderer.dotAt(e.getX(), e.getY()));
+            if (dragFrom >= 0) renderer.setDrag(dragFrom, e.getX(), e.getY());
         });
+        board.setOnMouseReleased(e -> onPointerReleased(renderer.dotAt(e.getX(), e.getY())));
+        game = new Tesselate_GameThread(leaderboard, PLAYER_NAME, blueName(HUMAN),
+                () -> Platform.runLater(pulse::start));
+        blueModeBox.getItems().add(HUMAN);
+        for (Tesselate_Bot.Difficulty d : Tesselate_Bot.Difficulty.values()) {
+            blueModeBox.getItems().add("Bot: " + d);
+        }
+        for (Tesselate_Bot.Difficulty d : Tesselate_Bot.Difficulty.values()) {
+            blueModeBox.getItems().add("Search: " + d);
+        }
+        blueModeBox.getSelectionModel().select(HUMAN);
+        boardModeBox.getItems().add(PATTERNS);
+        boardModeBox.getItems().addAll(DENSITY_NAMES);
+        boardModeBox.getSelectionModel().select(PATTERNS);
+        boardModeBox.valueProperty().addListener((obs, oldVal, newVal) -> resetBoard());
+        blueModeBox.valueProperty().addListener((obs, oldVal, newVal) -> onBlueModeChanged(newVal));
+
+        // Boards are laid out in board units, so the first one need not wait for the pane's size
+        resetBoard();
     }
 
     @FXML
     private void onRoll() {
-        if (edgesRemaining > 0) return;
-        edgesRemaining = rollDice();
-        updateHud();
+        if (!isCurrent() || hud.gameOver || hud.botTurn || hud.remaining > 0) return;
+        game.roll(firstSelected == null ? -1 : firstSelected);
     }
 
     @FXML
-    private void onReset() {
-        resetBoard();
-    }
-
-    private void resetBoard() {
-        board.getChildren().clear();
-        points.clear();
-        dotNodes.clear();
-        edges.clear();
-        claimedTriangles.clear();
-        firstSelected = null;
-
-        scoreRed = 0;
-        scoreBlue = 0;
-        current = Player.RED;
-        edgesRemaining = 0;
-
-        generateGeometricPattern();
-        drawDots();
-        updateHud();
-    }
-
-    private void generateGeometricPattern() {
-        double w = Math.max(300, board.getWidth() == 0 ? 900 : board.getWidth());
-        double h = Math.max(200, board.getHeight() == 0 ? 520 : board.getHeight());
-        double centerX = w / 2;
-        double centerY = h / 2;
-
-        // Randomly select one of 10 patterns
-        int pattern = new Random().nextInt(10);
-
-        switch (pattern) {
-            case 0: createHexagonalGrid(centerX, centerY); break;
-            case 1: createConcentricCircles(centerX, centerY); break;
-            case 2: createTriangularGrid(centerX, centerY); break;
-            case 3: createSquareGrid(centerX, centerY); break;
-            case 4: createStarPattern(centerX, centerY); break;
-            case 5: createDiamondPattern(centerX, centerY); break;
-            case 6: createSpiral(centerX, centerY); break;
-            case 7: createFlowerPattern(centerX, centerY); break;
-            case 8: createDoubleHexagon(centerX, centerY); break;
-            case 9: createOctagonPattern(centerX, centerY); break;
-        }
-    }
-
-    private void createHexagonalGrid(double cx, double cy) {
-        double spacing = 60;
-        for (int row = -2; row <= 2; row++) {
-            int cols = 4 - Math.abs(row);
-            for (int col = -cols; col <= cols; col++) {
-                double x = cx + col * spacing + (row % 2) * spacing / 2;
-                double y = cy + row * spacing * 0.866;
-                points.add(new Point2D(x, y));
-            }
-        }
+    private void onUndo() {
+        if (!isCurrent() || !hud.canUndo) return;
+        game.undo();
     }
 
-    private void createConcentricCircles(double cx, double cy) {
-        points.add(new Point2D(cx, cy)); // center
-        int[] dotsPerRing = {6, 8, 10};
-        double[] radii = {60, 110, 160};
-        
-        for (int ring = 0; ring < 3; ring++) {
-            int dots = dotsPerRing[ring];
-            double radius = radii[ring];
-            for (int i = 0; i < dots; i++) {
-                double angle = 2 * Math.PI * i / dots;
-                double x = cx + radius * Math.cos(angle);
-                double y = cy + radius * Math.sin(angle);
-                points.add(new Point2D(x, y));
-            }
-        }
-    }
-
-    private void createTriangularGrid(double cx, double cy) {
-        double spacing = 65;
-        for (int row = 0; row < 5; row++) {
-            int dotsInRow = 5 - row;
-            for (int col = 0; col < dotsInRow; col++) {
-                double x = cx + (col - dotsInRow / 2.0) * spacing + row * spacing / 2;
-                double y = cy - 100 + row * spacing * 0.866;
-                points.add(new Point2D(x, y));
-            }
-        }
-    }
-
-    private void createSquareGrid(double cx, double cy) {
-        double spacing = 70;
-        for (int row = -2; row <= 2; row++) {
-            for (int col = -2; col <= 2; col++) {
-                double x = cx + col * spacing;
-                double y = cy + row * spacing;
-                points.add(new Point2D(x, y));
-            }
-        }
+    @FXML
+    private void onRedo() {
+        if (!isCurrent() || !hud.canRedo) return;
+        game.redo();
     }
 
-    private void createStarPattern(double cx, double cy) {
-        points.add(new Point2D(cx, cy)); // center
-        
-        // Inner star points
-        for (int i = 0; i < 5; i++) {
-            double angle = -Math.PI / 2 + 2 * Math.PI * i / 5;
-            double x = cx + 60 * Math.cos(angle);
-            double y = cy + 60 * Math.sin(angle);
-            points.add(new Point2D(x, y));
-        }
-        
-        // Outer star points
-        for (int i = 0; i < 5; i++) {
-            double angle = -Math.PI / 2 + 2 * Math.PI * i / 5 + Math.PI / 5;
-            double x = cx + 120 * Math.cos(angle);
-            double y = cy + 120 * Math.sin(angle);
-            points.add(new Point2D(x, y));
-        }
-        
-        // Far outer points
-        for (int i = 0; i < 5; i++) {
-            double angle = -Math.PI / 2 + 2 * Math.PI * i / 5;
-            double x = cx + 170 * Math.cos(angle);
-            double y = cy + 170 * Math.sin(angle);
-            points.add(new Point2D(x, y));
+    @FXML
+    private void onStats() {
+        boolean show = statsBtn.isSelected();
+        statsOverlay.setVisible(show);
+        if (show) {
+            statsOverlay.setText(Tesselate_Metrics.summary());
+            statsRefresh.play();
+        } else {
+            statsRefresh.stop();
         }
     }
 
-    private void createDiamondPattern(double cx, double cy) {
-        // Center
-        points.add(new Point2D(cx, cy));
-        
-        // Diamond layers
-        int[][] offsets = {
-            {0, -60}, {60, 0}, {0, 60}, {-60, 0},
-            {0, -120}, {80, -60}, {120, 0}, {80, 60}, {0, 120}, {-80, 60}, {-120, 0}, {-80, -60}
-        };
-        
-        for (int[] offset : offsets) {
-            points.add(new Point2D(cx + offset[0], cy + offset[1]));
-        }
+    @FXML
+    private void onHints() {
+        game.setHints(hintsBtn.isSelected());
     }
 
-    private void createSpiral(double cx, double cy) {
-        points.add(new Point2D(cx, cy));
-        double angle = 0;
-        double radius = 0;
-        
-        for (int i = 0; i < 20; i++) {
-            angle += 0.8;
-            radius += 8;
-            double x = cx + radius * Math.cos(angle);
-            double y = cy + radius * Math.sin(angle);
-            points.add(new Point2D(x, y));
-        }
+    @FXML
+    private void onReset() {
+        resetBoard();
     }
 
-    private void createFlowerPattern(double cx, double cy) {
-        points.add(new Point2D(cx, cy)); // center
-        
-        // 6 petals
-        for (int petal = 0; petal < 6; petal++) {
-            double baseAngle = Math.PI * petal / 3;
-            
-            // 3 dots per petal
-            for (int i = 1; i <= 3; i++) {
-                double radius = i * 50;
-                double x = cx + radius * Math.cos(baseAngle);
-                double y = cy + radius * Math.sin(baseAngle);
-                points.add(new Point2D(x, y));
-            }
-        }
+    // The game thread builds the board; input waits for the diff that shows it
+    private void resetBoard() {
+        firstSelected = null;
+        int density = Arrays.asList(DENSITY_NAMES).indexOf(boardModeBox.getValue());
+        gameNumber = game.newGame(random.nextLong(), density >= 0 ? DENSITY_SPACING[density] : 0);
     }
 
-    private void createDoubleHexagon(double cx, double cy) {
-        // Inner hexagon
-        for (int i = 0; i < 6; i++) {
-            double angle = Math.PI * i / 3;
-            double x = cx + 60 * Math.cos(angle);
-            double y = cy + 60 * Math.sin(angle);
-            points.add(new Point2D(x, y));
-        }
-        
-        // Outer hexagon
-        for (int i = 0; i < 6; i++) {
-            double angle = Math.PI * i / 3;
-            double x = cx + 140 * Math.cos(angle);
-            double y = cy + 140 * Math.sin(angle);
-            points.add(new Point2D(x, y));
-        }
-        
-        // Mid points between inner and outer
-        for (int i = 0; i < 6; i++) {
-            double angle = Math.PI * i / 3 + Math.PI / 6;
-            double x = cx + 100 * Math.cos(angle);
-            double y = cy + 100 * Math.sin(angle);
-            points.add(new Point2D(x, y));
-        }
+    // True once the newest game is on screen; until then clicks would land on the old board
+    private boolean isCurrent() {
+        return hud != null && hud.game == gameNumber;
     }
 
-    private void createOctagonPattern(double cx, double cy) {
-        points.add(new Point2D(cx, cy)); // center
-        
-        // Inner octagon
-        for (int i = 0; i < 8; i++) {
-            double angle = Math.PI * i / 4;
-            double x = cx + 70 * Math.cos(angle);
-            double y = cy + 70 * Math.sin(angle);
-            points.add(new Point2D(x, y));
-        }
-        
-        // Outer octagon
-        for (int i = 0; i < 8; i++) {
-            double angle = Math.PI * i / 4;
-            double x = cx + 140 * Math.cos(angle);
-            double y = cy + 140 * Math.sin(angle);
-            points.add(new Point2D(x, y));
+    // A press and release on one dot is a click; a drag between two dots connects them
+    private void onPointerReleased(int target) {
+        int from = dragFrom;
+        dragFrom = -1;
+        renderer.setDrag(-1, 0, 0);
+        if (from < 0 || target < 0) return;
+        if (from == target) {
+            onDotClicked(target);
+            return;
         }
-    }
-
-    private void drawDots() {
-        for (int i = 0; i < points.size(); i++) {
-            Point2D p = points.get(i);
-            Circle c = new Circle(p.getX(), p.getY(), DOT_RADIUS);
-            c.getStyleClass().add("dot");
-            final int idx = i;
-            c.setOnMouseClicked(e -> onDotClicked(idx));
-            dotNodes.put(i, c);
-            board.getChildren().add(c);
+        if (!isCurrent() || !hud.humanToMove()) return;
+        if (firstSelected == null || firstSelected != from) {
+            clearSelection();
+            onDotClicked(from);
         }
+        onDotClicked(target);
     }
 
     private void onDotClicked(int idx) {
-        if (edgesRemaining <= 0) return;
-        
+        if (!isCurrent() || !hud.humanToMove()) return;
+
         if (firstSelected == null) {
             firstSelected = idx;
             markSelected(idx, true);
             return;
         }
-        
+
         if (Objects.equals(firstSelected, idx)) {
             markSelected(idx, false);
             firstSelected = null;
             return;
         }
 
+        // The game thread validates and answers with a diff, which also says what to select next
         int a = firstSelected;
-        int b = idx;
         markSelected(a, false);
-
-        Edge e = new Edge(a, b);
-        if (edges.contains(e)) {
-            firstSelected = null;
-            return;
-        }
-
-        // Check if edge is too long
-        Point2D p1 = points.get(a);
-        Point2D p2 = points.get(b);
-        double distance = p1.distance(p2);
-        if (distance > MAX_EDGE_LENGTH) {
-            System.out.println("Edge too long: " + distance);
-            firstSelected = null;
-            return;
+        firstSelected = null;
+        game.play(a, idx, System.nanoTime());
+    }
+
+    // Applies every diff that arrived since the last pulse, then the HUD of the newest once
+    private void applyDiffs() {
+        Tesselate_GameThread.Diff last = null;
+        long clicked = 0;
+        for (Tesselate_GameThread.Diff d; (d = game.poll()) != null; last = d) {
+            if (d.board != null) renderer.reset(d.board);
+            d.applyTo(view);
+            if (d.select != Tesselate_GameThread.KEEP) {
+                firstSelected = d.select >= 0 ? d.select : null;
+                renderer.setSelected(d.select);
+            }
+            if (d.clickNanos != 0) clicked = d.clickNanos;
         }
-
-        // Check if new edge intersects with any existing edge
-        if (intersectsWithAnyEdge(e)) {
-            System.out.println("Edge intersects with existing edge");
-            firstSelected = null;
+        if (last == null) {
+            if (game.rearm()) pulse.stop();
             return;
         }
-
-        // Check if new edge passes through any other dot
-        if (edgePassesThroughDot(e)) {
-            System.out.println("Edge passes through another dot");
-            firstSelected = null;
-            return;
-        }
-
-        drawEdge(e, current);
-        edges.add(e);
-
-        claimTrianglesByNewEdge(e, current);
-
-        edgesRemaining = Math.max(0, edgesRemaining - 1);
-
-        // Keep the second dot selected if there are remaining edges
-        if (edgesRemaining > 0) {
-            firstSelected = b;
-            markSelected(b, true);
-        } else {
-            firstSelected = null;
-            current = (current == Player.RED) ? Player.BLUE : Player.RED;
-        }
-
+        hud = last;
+        renderer.setHints(last.hints);
         updateHud();
+        // From the click to the move on screen, including the trip through the game thread
+        if (clicked != 0) Tesselate_Metrics.since(Tesselate_Metrics.Stage.MOVE, clicked);
     }
 
-    private void drawEdge(Edge e, Player p) {
-        Point2D p1 = points.get(e.u);
-        Point2D p2 = points.get(e.v);
-        Line line = new Line(p1.getX(), p1.getY(), p2.getX(), p2.getY());
-        line.setMouseTransparent(true);
-        line.getStyleClass().add(p == Player.RED ? "edge-red" : "edge-blue");
-        board.getChildren().add(line);
-        sendDotsToFront();
-    }
-
-    private void sendDotsToFront() {
-        for (Circle c : dotNodes.values()) {
-            c.toFront();
+    private final Tesselate_GameThread.View view = new Tesselate_GameThread.View() {
+        @Override
+        public void edge(int a, int b, Tesselate_Engine.Player owner) {
+            long start = System.nanoTime();
+            renderer.addEdge(a, b, owner);
+            Tesselate_Metrics.since(Tesselate_Metrics.Stage.DRAW_EDGE, start);
         }
-    }
 
-    private int claimTrianglesByNewEdge(Edge newEdge, Player p) {
-        int gained = 0;
-        int a = newEdge.u, b = newEdge.v;
-
-        for (int k = 0; k < points.size(); k++) {
-            if (k == a || k == b) continue;
-            Edge e1 = new Edge(a, k);
-            Edge e2 = new Edge(b, k);
-            if (edges.contains(e1) && edges.contains(e2)) {
-                Tri t = new Tri(a, b, k);
-                if (!claimedTriangles.contains(t)) {
-                    claimedTriangles.add(t);
-                    drawTriangle(t, p);
-                    if (p == Player.RED) scoreRed += 2; 
-                    else scoreBlue += 1;
-                    gained++;
-                }
+        @Override
+        public void triangles(int[] corners, Tesselate_Engine.Player owner) {
+            long start = System.nanoTime();
+            for (int i = 0; i < corners.length; i += 3) {
+                renderer.addTriangle(corners[i], corners[i + 1], corners[i + 2], owner);
             }
+            Tesselate_Metrics.since(Tesselate_Metrics.Stage.DRAW_TRIANGLES, start);
         }
-        return gained;
-    }
 
-    private void drawTriangle(Tri t, Player p) {
-        Point2D p1 = points.get(t.a);
-        Point2D p2 = points.get(t.b);
-        Point2D p3 = points.get(t.c);
-        Polygon poly = new Polygon(
-                p1.getX(), p1.getY(),
-                p2.getX(), p2.getY(),
-                p3.getX(), p3.getY()
-        );
-        poly.setMouseTransparent(true);
-        poly.getStyleClass().add(p == Player.RED ? "tri-fill-red" : "tri-fill-blue");
-        board.getChildren().add(0, poly);
-        sendEdgesAboveTriangles();
-        sendDotsToFront();
-    }
-
-    private void sendEdgesAboveTriangles() {
-        List<Node> lines = board.getChildren().stream()
-                .filter(n -> n instanceof Line)
-                .collect(Collectors.toList());
-        for (Node n : lines) n.toFront();
-    }
-
-    private void markSelected(int idx, boolean sel) {
-        Circle c = dotNodes.get(idx);
-        if (c == null) return;
-        if (sel) {
-            if (!c.getStyleClass().contains("selected")) 
-                c.getStyleClass().add("selected");
-        } else {
-            c.getStyleClass().remove("selected");
+        @Override
+        public void removeEdge(int triangles) {
+            renderer.removeLastTriangles(triangles);
+            renderer.removeLastEdge();
         }
-    }
+    };
 
-    private void updateHud() {
-        currentPlayerLbl.setText(current == Player.RED ? "RED" : "BLUE");
-        currentPlayerLbl.setTextFill(current == Player.RED ? 
-                Color.web("#e53935") : Color.web("#1e88e5"));
-        remainingLbl.setText(String.valueOf(edgesRemaining));
-        scoreRedLbl.setText(String.valueOf(scoreRed));
-        scoreBlueLbl.setText(String.valueOf(scoreBlue));
+    private void onBlueModeChanged(String mode) {
+        Tesselate_Bot bot = null;
+        for (Tesselate_Bot.Difficulty d : Tesselate_Bot.Difficulty.values()) {
+            if (("Bot: " + d).equals(mode)) bot = book.over(new Tesselate_MctsBot(d, random.nextLong()));
+            if (("Search: " + d).equals(mode)) bot = book.over(new Tesselate_ExpectiminimaxBot(d));
+        }
+        game.setBot(bot, blueName(bot != null ? mode : HUMAN));
     }
 
-    private int rollDice() {
-        return 1 + new Random().nextInt(6);
+    // BLUE's leaderboard name: the bot mode, or a guest; never the local player's own name
+    private static String blueName(String mode) {
+        String blue = HUMAN.equals(mode) ? GUEST_NAME : mode;
+        return blue.equals(PLAYER_NAME) ? GUEST_NAME + " " + blue : blue;
     }
 
-    // Check if edge passes through any other dot's perimeter
-    private boolean edgePassesThroughDot(Edge edge) {
-        Point2D p1 = points.get(edge.u);
-        Point2D p2 = points.get(edge.v);
-
-        for (int i = 0; i < points.size(); i++) {
-            // Skip the endpoints of the edge
-            if (i == edge.u || i == edge.v) {
-                continue;
-            }
-
-            Point2D dotCenter = points.get(i);
-            
-            // Calculate the distance from the dot center to the line segment
-            double distance = distanceFromPointToLineSegment(dotCenter, p1, p2);
-            
-            // If the distance is less than or equal to the dot radius, the edge passes through the dot
-            if (distance <= DOT_RADIUS) {
-                return true;
-            }
+    // Opening book written by Tesselate_BookBuilder; bots search everything when it is missing
+    private static Tesselate_OpeningBook loadBook() {
+        Path file = Path.of(BOOK_FILE);
+        if (!Files.exists(file)) return Tesselate_OpeningBook.EMPTY;
+        try {
+            return Tesselate_OpeningBook.open(file);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Opening book not loaded: " + e.getMessage());
+            return Tesselate_OpeningBook.EMPTY;
         }
-        return false;
     }
 
-    // Calculate the shortest distance from a point to a line segment
-    private double distanceFromPointToLineSegment(Point2D point, Point2D lineStart, Point2D lineEnd) {
-        double x0 = point.getX();
-        double y0 = point.getY();
-        double x1 = lineStart.getX();
-        double y1 = lineStart.getY();
-        double x2 = lineEnd.getX();
-        double y2 = lineEnd.getY();
-
-        double dx = x2 - x1;
-        double dy = y2 - y1;
-        
-        // If the line segment is actually a point
-        if (dx == 0 && dy == 0) {
-            return Math.sqrt((x0 - x1) * (x0 - x1) + (y0 - y1) * (y0 - y1));
-        }
-
-        // Calculate the parameter t that represents the projection of the point onto the line
-        double t = ((x0 - x1) * dx + (y0 - y1) * dy) / (dx * dx + dy * dy);
-        
-        // Clamp t to [0, 1] to handle the segment (not the infinite line)
-        t = Math.max(0, Math.min(1, t));
-        
-        // Calculate the closest point on the segment
-        double closestX = x1 + t * dx;
-        double closestY = y1 + t * dy;
-        
-        // Return the distance from the point to the closest point on the segment
-        return Math.sqrt((x0 - closestX) * (x0 - closestX) + (y0 - closestY) * (y0 - closestY));
-    }
-
-    // Check if new edge intersects with any existing edge
-    private boolean intersectsWithAnyEdge(Edge newEdge) {
-        Point2D p1 = points.get(newEdge.u);
-        Point2D p2 = points.get(newEdge.v);
-
-        for (Edge existingEdge : edges) {
-            // Skip if edges share a common vertex (they can touch at endpoints)
-            if (newEdge.u == existingEdge.u || newEdge.u == existingEdge.v ||
-                newEdge.v == existingEdge.u || newEdge.v == existingEdge.v) {
-                continue;
-            }
-
-            Point2D p3 = points.get(existingEdge.u);
-            Point2D p4 = points.get(existingEdge.v);
-
-            // Check if the two line segments intersect
-            if (lineSegmentsIntersect(p1, p2, p3, p4)) {
-                return true;
+    @FXML
+    private void onLeaderboard() {
+        StringBuilder text = new StringBuilder();
+        if (leaderboard == null) {
+            text.append("The leaderboard could not be opened.");
+        } else {
+            // The game thread records results under this lock
+            synchronized (leaderboard) {
+                if (leaderboard.size() == 0) {
+                    text.append("No games finished yet.");
+                } else {
+                    int rank = 1;
+                    for (Tesselate_Leaderboard.Standing s : leaderboard.top(10)) {
+                        text.append(String.format("%2d. %s  %.0f  (%d-%d-%d)%n", rank++, s.name(), s.rating(),
+                                s.wins(), s.draws(), s.losses()));
+                    }
+                    int mine = leaderboard.rank(PLAYER_NAME);
+                    if (mine > 10) {
+                        text.append(String.format("%n%s is ranked %d of %d", PLAYER_NAME, mine, leaderboard.size()));
+                    }
+                }
             }
         }
-        return false;
+        Alert alert = new Alert(Alert.AlertType.INFORMATION, text.toString());
+        alert.setTitle("Leaderboard");
+        alert.setHeaderText("Top players by rating");
+        alert.showAndWait();
     }
 
-    // Check if two line segments intersect (excluding endpoints)
-    private boolean lineSegmentsIntersect(Point2D p1, Point2D p2, Point2D p3, Point2D p4) {
-        double d1 = direction(p3, p4, p1);
-        double d2 = direction(p3, p4, p2);
-        double d3 = direction(p1, p2, p3);
-        double d4 = direction(p1, p2, p4);
-
-        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) &&
-            ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
-            return true;
+    private static Tesselate_Leaderboard openLeaderboard() {
+        try {
+            return Tesselate_Leaderboard.open(Path.of(LEADERBOARD_FILE));
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Leaderboard not loaded: " + e.getMessage());
+            return null;
         }
-
-        return false;
     }
 
-    // Calculate direction/orientation
-    private double direction(Point2D p1, Point2D p2, Point2D p3) {
-        return (p3.getX() - p1.getX()) * (p2.getY() - p1.getY()) -
-               (p2.getX() - p1.getX()) * (p3.getY() - p1.getY());
+    private void markSelected(int idx, boolean sel) {
+        renderer.setSelected(sel ? idx : -1);
     }
 
-
-
-    private static final class Edge {
-        final int u, v;
-        Edge(int a, int b) {
-            if (a == b) throw new IllegalArgumentException("self-edge");
-            if (a < b) { this.u = a; this.v = b; }
-            else { this.u = b; this.v = a; }
-        }
-        @Override 
-        public boolean equals(Object o) {
-            if (!(o instanceof Edge)) return false;
-            Edge e = (Edge) o;
-            return u == e.u && v == e.v;
-        }
-        @Override 
-        public int hashCode() {
-            return Objects.hash(u, v);
+    private void clearSelection() {
+        if (firstSelected != null) {
+            markSelected(firstSelected, false);
+            firstSelected = null;
         }
     }
 
-    private static final class Tri {
-        final int a, b, c;
-        Tri(int x, int y, int z) {
-            int[] arr = new int[]{x, y, z};
-            Arrays.sort(arr);
-            a = arr[0]; 
-            b = arr[1]; 
-            c = arr[2];
-        }
-        @Override 
-        public boolean equals(Object o) {
-            if (!(o instanceof Tri)) return false;
-            Tri t = (Tri) o;
-            return a == t.a && b == t.b && c == t.c;
-        }
-        @Override 
-        public int hashCode() {
-            return Objects.hash(a, b, c);
-        }
+    // Once per pulse at most, from the newest diff's snapshot
+    private void updateHud() {
+        long start = System.nanoTime();
+        if (hud.gameOver) {
+            // No edge can be drawn any more: show the result instead of the turn
+            Tesselate_Engine.Player leader = hud.leader;
+            currentPlayerLbl.setText(leader == null ? "DRAW" : leader + " WINS");
+            currentPlayerLbl.setTextFill(leader == Tesselate_Engine.Player.BLUE ?
+                    Color.web("#1e88e5") : leader == Tesselate_Engine.Player.RED ? Color.web("#e53935") : Color.GRAY);
+        } else {
+            Tesselate_Engine.Player current = hud.current;
+            currentPlayerLbl.setText(current == Tesselate_Engine.Player.RED ? "RED" : "BLUE");
+            currentPlayerLbl.setTextFill(current == Tesselate_Engine.Player.RED ?
+                    Color.web("#e53935") : Color.web("#1e88e5"));
+        }
+        rollBtn.setDisable(hud.gameOver || hud.botTurn);
+        undoBtn.setDisable(!hud.canUndo);
+        redoBtn.setDisable(!hud.canRedo);
+        remainingLbl.setText(String.valueOf(hud.remaining));
+        scoreRedLbl.setText(String.valueOf(hud.scoreRed));
+        scoreBlueLbl.setText(String.valueOf(hud.scoreBlue));
+        Tesselate_Metrics.since(Tesselate_Metrics.Stage.HUD, start);
     }
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monte Carlo Tree Search player.
+ *
+ * Each worker grows a private UCT tree from the same root (root
+ * parallelism). The dice roll that starts every turn is a chance node whose
+ * six faces are sampled uniformly, so the tree never assumes a lucky roll.
+ * After every playout a worker adds its result for the root move it tried
+ * to shared atomic arrays; no locks are taken, and the move with the most
+ * visits over all workers wins. The caller is one worker and the others
+ * run on the common fork-join pool, so a bot owns no threads and one that
+ * is replaced needs no shutting down.
+ *
+ * Playouts are uniformly random games to the end, scored 1 / 0.5 / 0 for
+ * a win, draw or loss of the player who chose the edge.
+ */
+public final class Tesselate_MctsBot implements Tesselate_Bot {
+
+    private static final double EXPLORATION = 1.0;
+    private static final long REWARD_SCALE = 1 << 16; // fixed point for the shared reward sums
+
+    private final long timeMillis;
+    private final int playouts;
+    private final int workers;
+    private long seed;
+
+    public Tesselate_MctsBot(Difficulty difficulty, long seed) {
+        this(difficulty.timeMillis, difficulty.playouts, Runtime.getRuntime().availableProcessors(), seed);
+    }
+
+    public Tesselate_MctsBot(long timeMillis, int playouts, int workers, long seed) {
+        this.timeMillis = timeMillis;
+        this.playouts = playouts;
+        this.workers = Math.max(1, workers);
+        this.seed = seed;
+    }
+
+    @Override
+    public int chooseMove(Tesselate_Engine state) {
+        if (state.isGameOver() || state.edgesRemaining() == 0) {
+            throw new IllegalStateException("no move to choose");
+        }
+        if (state.legalMoveCount() == 1) return state.legalMove(0);
+
+        int candidates = state.analysis().candidateCount();
+        AtomicLongArray visits = new AtomicLongArray(candidates);
+        AtomicLongArray rewards = new AtomicLongArray(candidates);
+        AtomicInteger budget = new AtomicInteger(playouts);
+        long deadline = System.nanoTime() + timeMillis * 1_000_000L;
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[workers - 1];
+        for (int w = 0; w < tasks.length; w++) {
+            Worker worker = new Worker(state, new SplittableRandom(seed++), visits, rewards, budget, deadline);
+            tasks[w] = ForkJoinPool.commonPool().submit(worker::run);
+        }
+        new Worker(state, new SplittableRandom(seed++), visits, rewards, budget, deadline).run();
+        for (ForkJoinTask<?> t : tasks) t.join();
+
+        int best = state.legalMove(0);
+        long bestVisits = -1;
+        for (int i = 0; i < state.legalMoveCount(); i++) {
+            int c = state.legalMove(i);
+            long v = visits.get(c);
+            if (v > bestVisits || (v == bestVisits && rewards.get(c) > rewards.get(best))) {
+                best = c;
+                bestVisits = v;
+            }
+        }
+        return best;
+    }
+
+    /** One search thread with its own tree and random stream. */
+    private static final class Worker {
+        private final Tesselate_Engine root; // private copy, unwound after every playout
+        private final SplittableRandom rnd;
+        private final AtomicLongArray sharedVisits;
+        private final AtomicLongArray sharedRewards;
+        private final AtomicInteger budget;
+        private final long deadline;
+        private final Node rootNode = new Node(null, -1, null);
+
+        Worker(Tesselate_Engine root, SplittableRandom rnd, AtomicLongArray visits, AtomicLongArray rewards,
+               AtomicInteger budget, long deadline) {
+            this.root = root.copy();
+            this.rnd = rnd;
+            this.sharedVisits = visits;
+            this.sharedRewards = rewards;
+            this.budget = budget;
+            this.deadline = deadline;
+        }
+
+        void run() {
+            Tesselate_Engine.Player me = root.current();
+            while (budget.getAndDecrement() > 0 && System.nanoTime() < deadline) {
+                Node leaf = descend(root);
+                double redReward = playout(root);
+                root.undoTo(0);
+                int rootMove = backPropagate(leaf, redReward);
+                if (rootMove >= 0) {
+                    double mine = me == Tesselate_Engine.Player.RED ? redReward : 1 - redReward;
+                    sharedVisits.incrementAndGet(rootMove);
+                    sharedRewards.addAndGet(rootMove, (long) (mine * REWARD_SCALE));
+                }
+            }
+        }
+
+        // Selection and expansion; leaves s at the state of the returned node
+        private Node descend(Tesselate_Engine s) {
+            Node n = rootNode;
+            while (!s.isGameOver()) {
+                if (s.edgesRemaining() == 0) {
+                    // Chance node: every face is equally likely, so sample one
+                    int face = 1 + rnd.nextInt(6);
+                    s.applyRoll(face);
+                    if (n.faces == null) n.faces = new Node[6];
+                    Node f = n.faces[face - 1];
+                    if (f == null) f = n.faces[face - 1] = new Node(n, -1, null);
+                    n = f;
+                    continue;
+                }
+                if (n.untried == null) n.expandFrom(s);
+                if (n.untriedCount > 0) {
+                    int i = rnd.nextInt(n.untriedCount);
+                    int move = n.untried[i];
+                    n.untried[i] = n.untried[--n.untriedCount];
+                    Node child = new Node(n, move, s.current());
+                    n.addChild(child);
+                    s.applyCandidate(move);
+                    return child;
+                }
+                Node child = n.select();
+                s.applyCandidate(child.move);
+                n = child;
+            }
+            return n;
+        }
+
+        // Random game to the end; returns 1 if RED wins, 0.5 on a draw, 0 otherwise
+        private double playout(Tesselate_Engine s) {
+            while (!s.isGameOver()) {
+                if (s.edgesRemaining() == 0) s.applyRoll(1 + rnd.nextInt(6));
+                s.applyCandidate(s.legalMove(rnd.nextInt(s.legalMoveCount())));
+            }
+            Tesselate_Engine.Player leader = s.leader();
+            return leader == null ? 0.5 : (leader == Tesselate_Engine.Player.RED ? 1 : 0);
+        }
+
+        // Returns the root move this playout went through, or -1
+        private int backPropagate(Node n, double redReward) {
+            int rootMove = -1;
+            for (; n != null; n = n.parent) {
+                n.visits++;
+                if (n.mover != null) {
+                    n.reward += n.mover == Tesselate_Engine.Player.RED ? redReward : 1 - redReward;
+                }
+                if (n.parent == rootNode) rootMove = n.move;
+            }
+            return rootMove;
+        }
+    }
+
+    /**
+     * Tree node for the position after {@code move}. Decision nodes keep
+     * their edge children; a node whose move ended the turn also owns the six
+     * roll outcomes in {@code faces}.
+     */
+    private static final class Node {
+        final Node parent;
+        final int move;
+        final Tesselate_Engine.Player mover; // who chose move; null for roll outcomes and the root
+        int visits;
+        double reward;
+
+        int[] untried;
+        int untriedCount;
+        Node[] children;
+        int childCount;
+        Node[] faces;
+
+        Node(Node parent, int move, Tesselate_Engine.Player mover) {
+            this.parent = parent;
+            this.move = move;
+            this.mover = mover;
+        }
+
+        void expandFrom(Tesselate_Engine s) {
+            untriedCount = s.legalMoveCount();
+            untried = new int[untriedCount];
+            for (int i = 0; i < untriedCount; i++) untried[i] = s.legalMove(i);
+            children = new Node[Math.min(untriedCount, 8)];
+        }
+
+        void addChild(Node child) {
+            if (childCount == children.length) children = Arrays.copyOf(children, childCount * 2);
+            children[childCount++] = child;
+        }
+
+        Node select() {
+            double logN = Math.log(Math.max(1, visits));
+            Node best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < childCount; i++) {
+                Node c = children[i];
+                double score = c.reward / c.visits + EXPLORATION * Math.sqrt(logN / c.visits);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = c;
+                }
+            }
+            return best;
+        }
+    }
+}
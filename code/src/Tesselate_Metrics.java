@@ -0,0 +1,239 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time of a move goes, for the stats overlay, JMX and Flight
+ * Recorder.
+ *
+ * Every stage of a move played in the window (see {@link Stage}) adds its
+ * duration to a counter and a histogram and, while a recording has it
+ * enabled, commits a {@code tessellate.Stage} event. The histogram has
+ * four buckets per power of two, so percentiles are within 19% and
+ * recording is a few atomic adds with no allocation. Only the window
+ * records stages: the engine just measures its triangle claim on request
+ * (see {@link Tesselate_Engine#setTimed}), and bots and batch runs pay
+ * nothing.
+ *
+ * With {@code -Dtessellate.jmx=true} the stages are also published as the
+ * MXBean {@code tessellate:type=Metrics}.
+ */
+public final class Tesselate_Metrics {
+
+    public enum Stage {
+        VALIDATE("validate"),         // length, crossing and blocking-dot checks
+        APPLY("apply"),               // edge insert and dropping crossed candidates
+        CLAIM("claim"),               // triangles completed by the edge
+        DRAW_EDGE("draw edge"),
+        DRAW_TRIANGLES("draw triangles"),
+        HUD("hud"),
+        MOVE("move"),                 // the whole click, all of the above
+        BOT("bot think");             // on the bot thread
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    /** JFR event for one stage; durations are measured by the caller, so they are a field. */
+    @Name("tessellate.Stage")
+    @Label("Move Stage")
+    @Category("Tessellate")
+    @Description("Time spent in one stage of a move")
+    static final class StageEvent extends Event {
+        @Label("Stage") String stage;
+        @Label("Duration") @Timespan(Timespan.NANOSECONDS) long nanos;
+    }
+
+    /** JFR event for one edge the player or the bot tried to draw. */
+    @Name("tessellate.Move")
+    @Label("Move")
+    @Category("Tessellate")
+    static final class MoveEvent extends Event {
+        @Label("From") int a;
+        @Label("To") int b;
+        @Label("Result") String result;
+        @Label("Triangles") int triangles;
+    }
+
+    private static final int SUB_BITS = 2;
+    private static final int BUCKETS = 64 << SUB_BITS;
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LongAdder[] counts = new LongAdder[STAGES.length];
+    private static final LongAdder[] totals = new LongAdder[STAGES.length];
+    private static final AtomicLongArray[] histograms = new AtomicLongArray[STAGES.length];
+    private static final AtomicLongArray maxima = new AtomicLongArray(STAGES.length);
+    private static final LongAdder rejected = new LongAdder();
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            counts[i] = new LongAdder();
+            totals[i] = new LongAdder();
+            histograms[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    private Tesselate_Metrics() {}
+
+    /** Records a stage that started at {@code startNanos} (a {@link System#nanoTime()} reading) and ends now. */
+    public static void since(Stage stage, long startNanos) {
+        record(stage, System.nanoTime() - startNanos);
+    }
+
+    public static void record(Stage stage, long nanos) {
+        int i = stage.ordinal();
+        nanos = Math.max(0, nanos);
+        counts[i].increment();
+        totals[i].add(nanos);
+        histograms[i].incrementAndGet(bucket(nanos));
+        long max;
+        while (nanos > (max = maxima.get(i)) && !maxima.compareAndSet(i, max, nanos)) {
+            // lost a race with another thread; retry against the new maximum
+        }
+        StageEvent e = new StageEvent();
+        if (e.shouldCommit()) {
+            e.stage = stage.label;
+            e.nanos = nanos;
+            e.commit();
+        }
+    }
+
+    /** Counts a move the engine refused. */
+    public static void rejected() {
+        rejected.increment();
+    }
+
+    public static long count(Stage stage) { return counts[stage.ordinal()].sum(); }
+    public static long rejectedCount() { return rejected.sum(); }
+    public static long maxNanos(Stage stage) { return maxima.get(stage.ordinal()); }
+
+    public static double meanNanos(Stage stage) {
+        long n = count(stage);
+        return n == 0 ? 0 : (double) totals[stage.ordinal()].sum() / n;
+    }
+
+    /** Upper bound of the bucket holding the {@code p} quantile, 0 when nothing was recorded. */
+    public static long percentileNanos(Stage stage, double p) {
+        AtomicLongArray h = histograms[stage.ordinal()];
+        long n = 0;
+        for (int k = 0; k < BUCKETS; k++) n += h.get(k);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * n));
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k++) {
+            seen += h.get(k);
+            if (seen >= rank) return Math.min(upperBound(k), maxNanos(stage));
+        }
+        return maxNanos(stage);
+    }
+
+    public static void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            counts[i].reset();
+            totals[i].reset();
+            for (int k = 0; k < BUCKETS; k++) histograms[i].set(k, 0);
+            maxima.set(i, 0);
+        }
+        rejected.reset();
+    }
+
+    // Values below 2^SUB_BITS get a bucket each; above, four buckets per power of two
+    static int bucket(long nanos) {
+        if (nanos < (1 << SUB_BITS)) return (int) nanos;
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exp - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < (1 << SUB_BITS)) return bucket;
+        int exp = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        int sub = bucket & ((1 << SUB_BITS) - 1);
+        if (exp >= 62) return Long.MAX_VALUE;
+        return (1L << exp) + ((long) (sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    /** One line per stage: count, mean, p50, p99 and max in microseconds. */
+    public static String summary() {
+        StringBuilder s = new StringBuilder(String.format("%-15s %7s %8s %8s %8s %8s%n",
+                "stage (us)", "count", "mean", "p50", "p99", "max"));
+        for (Stage stage : STAGES) {
+            s.append(String.format("%-15s %7d %8.1f %8.1f %8.1f %8.1f%n", stage.label, count(stage),
+                    meanNanos(stage) / 1e3, percentileNanos(stage, 0.50) / 1e3,
+                    percentileNanos(stage, 0.99) / 1e3, maxNanos(stage) / 1e3));
+        }
+        s.append("rejected moves  ").append(rejectedCount());
+        return s.toString();
+    }
+
+    /** The stages over JMX, as parallel arrays indexed like {@link #getStages()}. */
+    public interface StagesMXBean {
+        String[] getStages();
+        long[] getCounts();
+        double[] getMeanMicros();
+        double[] getP50Micros();
+        double[] getP99Micros();
+        double[] getMaxMicros();
+        long getRejectedMoves();
+        void reset();
+    }
+
+    private static final class Stages implements StagesMXBean {
+        @Override public String[] getStages() {
+            String[] names = new String[STAGES.length];
+            for (Stage s : STAGES) names[s.ordinal()] = s.label;
+            return names;
+        }
+        @Override public long[] getCounts() {
+            long[] v = new long[STAGES.length];
+            for (Stage s : STAGES) v[s.ordinal()] = count(s);
+            return v;
+        }
+        @Override public double[] getMeanMicros() {
+            double[] v = new double[STAGES.length];
+            for (Stage s : STAGES) v[s.ordinal()] = meanNanos(s) / 1e3;
+            return v;
+        }
+        @Override public double[] getP50Micros() { return percentiles(0.50); }
+        @Override public double[] getP99Micros() { return percentiles(0.99); }
+        @Override public double[] getMaxMicros() {
+            double[] v = new double[STAGES.length];
+            for (Stage s : STAGES) v[s.ordinal()] = maxNanos(s) / 1e3;
+            return v;
+        }
+        @Override public long getRejectedMoves() { return rejectedCount(); }
+        @Override public void reset() { Tesselate_Metrics.reset(); }
+
+        private static double[] percentiles(double p) {
+            double[] v = new double[STAGES.length];
+            for (Stage s : STAGES) v[s.ordinal()] = percentileNanos(s, p) / 1e3;
+            return v;
+        }
+    }
+
+    /** Publishes the MXBean if {@code -Dtessellate.jmx=true}; false if it was not asked for or failed. */
+    public static boolean registerIfEnabled() {
+        if (!Boolean.getBoolean("tessellate.jmx")) return false;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Stages(),
+                    new ObjectName("tessellate:type=Metrics"));
+            return true;
+        } catch (JMException e) {
+            System.getLogger(Tesselate_Metrics.class.getName())
+                    .log(System.Logger.Level.WARNING, "Metrics not published over JMX: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Precomputed best edges for early positions on the built-in patterns.
+ *
+ * The book file is an open-addressed hash table that is memory-mapped as
+ * is: a lookup hashes the position, probes a few 16-byte slots and never
+ * parses or loads the rest of the file. Slots hold the position key and
+ * the edge as its two dot indices, so an entry stays meaningful even if a
+ * board is built with different candidate ids; the edge is checked
+ * against the live position before it is returned.
+ *
+ * Layout (big-endian): magic, version, slot count, entry count, then
+ * slot count slots of (long key, int u, int v). Key 0 marks an empty slot.
+ */
+public final class Tesselate_OpeningBook {
+
+    public static final Tesselate_OpeningBook EMPTY = new Tesselate_OpeningBook(null, 0, 0);
+
+    private static final int MAGIC = 0x54424f4b; // "TBOK"
+    private static final int VERSION = 2; // 2: triangles with a dot inside no longer score
+    private static final int HEADER = 16;
+    private static final int SLOT = 16;
+
+    private final ByteBuffer slots;
+    private final int mask;
+    private final int size;
+
+    private Tesselate_OpeningBook(ByteBuffer slots, int slotCount, int size) {
+        this.slots = slots;
+        this.mask = slotCount - 1;
+        this.size = size;
+    }
+
+    /** Maps the book file read-only. */
+    public static Tesselate_OpeningBook open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.capacity() < HEADER || buf.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not an opening book");
+            }
+            if (buf.getInt(4) != VERSION) throw new IOException(file + ": unsupported book version " + buf.getInt(4));
+            int slotCount = buf.getInt(8);
+            if (Integer.bitCount(slotCount) != 1 || buf.capacity() != HEADER + (long) slotCount * SLOT) {
+                throw new IOException(file + " is truncated");
+            }
+            return new Tesselate_OpeningBook(buf, slotCount, buf.getInt(12));
+        }
+    }
+
+    /** Number of positions in the book. */
+    public int size() { return size; }
+
+    /**
+     * Book edge for the position, as a candidate id of {@code state.analysis()},
+     * or -1 if the position is not in the book or its edge is not playable.
+     */
+    public int lookup(Tesselate_Engine state) {
+        if (slots == null || state.board().pattern() < 0 || state.edgesRemaining() == 0) return -1;
+        long key = key(state.board().pattern(), state.hash());
+        int i = (int) Tesselate_Engine.mix(key) & mask;
+        while (true) {
+            int at = HEADER + i * SLOT;
+            long k = slots.getLong(at);
+            if (k == 0) return -1;
+            if (k == key) {
+                int u = slots.getInt(at + 8), v = slots.getInt(at + 12);
+                if (!state.isLegal(u, v)) return -1;
+                return state.analysis().find(Math.min(u, v), Math.max(u, v));
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /** Bot that plays book edges when it has one and asks {@code fallback} otherwise. */
+    public Tesselate_Bot over(Tesselate_Bot fallback) {
+        return state -> {
+            int c = lookup(state);
+            return c >= 0 ? c : fallback.chooseMove(state);
+        };
+    }
+
+    /** Book key of a position on a built-in pattern; never 0. */
+    static long key(int pattern, long positionHash) {
+        long k = Tesselate_Engine.mix(positionHash ^ (0x6a09e667f3bcc909L * (pattern + 1)));
+        return k == 0 ? 1 : k;
+    }
+
+    /**
+     * Writes a book. {@code keys[i]} (from {@link #key}) maps to the edge
+     * between dots {@code us[i]} and {@code vs[i]}; later duplicates win.
+     */
+    static void write(Path file, long[] keys, int[] us, int[] vs, int n) throws IOException {
+        int slotCount = Integer.highestOneBit(Math.max(2, n * 2 - 1)) << 1;
+        int slotMask = slotCount - 1;
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + slotCount * SLOT);
+        int entries = 0;
+        for (int e = 0; e < n; e++) {
+            int i = (int) Tesselate_Engine.mix(keys[e]) & slotMask;
+            while (true) {
+                int at = HEADER + i * SLOT;
+                long k = buf.getLong(at);
+                if (k == 0 || k == keys[e]) {
+                    if (k == 0) entries++;
+                    buf.putLong(at, keys[e]).putInt(at + 8, us[e]).putInt(at + 12, vs[e]);
+                    break;
+                }
+                i = (i + 1) & slotMask;
+            }
+        }
+        buf.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slotCount).putInt(12, entries);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A game position as one flat {@code long[]}, for keys, snapshots and
+ * save files.
+ *
+ * The position is canonical: two engines that reached it by different
+ * move orders pack to equal words, so {@link #equals} and
+ * {@link #hashCode} work as a map key and a copy is one
+ * {@code System.arraycopy}. Claimed triangles are not stored, since an
+ * empty triangle is claimed exactly when its three sides are drawn; only
+ * their owner is.
+ *
+ * Layout: word 0 is the header (bit 0 set when BLUE is to move, bits 1..3
+ * the edges left in the turn, then 30 bits each of RED's and BLUE's
+ * score), followed by one bit per candidate of the analysis that is drawn
+ * and one bit per triangle id (see
+ * {@link Tesselate_BoardAnalysis#triangleId}) that BLUE owns.
+ *
+ * {@link #toBytes()} writes the layout fingerprint and the set bits of
+ * both bitmaps as varint gaps, so a save is a few bytes per drawn edge
+ * instead of a bit per candidate.
+ */
+public final class Tesselate_PackedState {
+
+    static final int MAGIC = 0x54504f53; // "TPOS"
+    static final int VERSION = 1;
+
+    private static final int SCORE_BITS = 30;
+    private static final long SCORE_MASK = (1L << SCORE_BITS) - 1;
+
+    private final Tesselate_BoardAnalysis analysis;
+    private final int triangleBase; // first word of the BLUE triangle bitmap
+    private final long[] words;
+
+    Tesselate_PackedState(Tesselate_BoardAnalysis analysis) {
+        this.analysis = analysis;
+        this.triangleBase = triangleBase(analysis);
+        this.words = new long[length(analysis)];
+    }
+
+    private Tesselate_PackedState(Tesselate_PackedState src) {
+        this.analysis = src.analysis;
+        this.triangleBase = src.triangleBase;
+        this.words = src.words.clone();
+    }
+
+    /** Words a position on this analysis takes, header included. */
+    static int length(Tesselate_BoardAnalysis analysis) {
+        return triangleBase(analysis) + ((analysis.totalTriangles() + 63) >>> 6);
+    }
+
+    static int triangleBase(Tesselate_BoardAnalysis analysis) {
+        return 1 + ((analysis.candidateCount() + 63) >>> 6);
+    }
+
+    static long header(Tesselate_Engine.Player current, int edgesRemaining, int scoreRed, int scoreBlue) {
+        return (current == Tesselate_Engine.Player.BLUE ? 1 : 0) | (long) edgesRemaining << 1
+                | ((long) scoreRed & SCORE_MASK) << 4 | ((long) scoreBlue & SCORE_MASK) << (4 + SCORE_BITS);
+    }
+
+    /** The backing words, for {@link Tesselate_Engine} to fill and read in place. */
+    long[] words() { return words; }
+
+    public Tesselate_BoardAnalysis analysis() { return analysis; }
+
+    public Tesselate_Engine.Player current() {
+        return (words[0] & 1) == 0 ? Tesselate_Engine.Player.RED : Tesselate_Engine.Player.BLUE;
+    }
+
+    public int edgesRemaining() { return (int) (words[0] >>> 1) & 7; }
+
+    public int score(Tesselate_Engine.Player p) {
+        int shift = p == Tesselate_Engine.Player.RED ? 4 : 4 + SCORE_BITS;
+        return (int) ((words[0] >>> shift) & SCORE_MASK);
+    }
+
+    public boolean isDrawn(int c) {
+        return (words[1 + (c >>> 6)] & (1L << c)) != 0;
+    }
+
+    /** Smallest drawn candidate id >= {@code from}, or -1. */
+    public int nextDrawn(int from) {
+        return nextBit(1, triangleBase, from);
+    }
+
+    /** Whether BLUE owns triangle id t; false for triangles nobody has claimed. */
+    public boolean isBlue(int t) {
+        return (words[triangleBase + (t >>> 6)] & (1L << t)) != 0;
+    }
+
+    /** Smallest triangle id >= {@code from} that BLUE owns, or -1. */
+    public int nextBlue(int from) {
+        return nextBit(triangleBase, words.length, from);
+    }
+
+    public int edgeCount() { return bitCount(1, triangleBase); }
+
+    // Index of the first set bit >= from in words[lo .. hi), counted from lo
+    private int nextBit(int lo, int hi, int from) {
+        int w = lo + (from >>> 6);
+        if (from < 0 || w >= hi) return -1;
+        long bits = words[w] & (-1L << from);
+        while (bits == 0) {
+            if (++w == hi) return -1;
+            bits = words[w];
+        }
+        return ((w - lo) << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    private int bitCount(int lo, int hi) {
+        int n = 0;
+        for (int i = lo; i < hi; i++) n += Long.bitCount(words[i]);
+        return n;
+    }
+
+    public Tesselate_PackedState copy() {
+        return new Tesselate_PackedState(this);
+    }
+
+    /** Overwrites {@code dst}, a position on the same analysis, with this one. */
+    public void copyInto(Tesselate_PackedState dst) {
+        if (dst.analysis != analysis) throw new IllegalArgumentException("position of another board");
+        System.arraycopy(words, 0, dst.words, 0, words.length);
+    }
+
+    /** 64-bit key of the position; equal positions always give equal keys. */
+    public long key() {
+        long h = words.length;
+        for (int i = 0; i < words.length; i++) {
+            h += Tesselate_Engine.mix(words[i] + i * 0x9e3779b97f4a7c15L);
+        }
+        return Tesselate_Engine.mix(h);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Tesselate_PackedState
+                && ((Tesselate_PackedState) o).analysis == analysis
+                && Arrays.equals(words, ((Tesselate_PackedState) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    /**
+     * Save format: magic, version, the layout fingerprint of
+     * {@link Tesselate_AnalysisCache}, then varints: candidate and triangle
+     * counts, the header as (to move | edges left << 1), RED's and BLUE's
+     * scores, and each bitmap as its set-bit count followed by the gaps
+     * between set bits.
+     */
+    public byte[] toBytes() {
+        int drawn = edgeCount(), blue = bitCount(triangleBase, words.length);
+        ByteBuffer out = ByteBuffer.allocate(16 + 5 * (7 + drawn + blue));
+        out.putInt(MAGIC);
+        out.put((byte) VERSION);
+        out.putLong(fingerprint(analysis));
+        Tesselate_Protocol.putVarint(out, analysis.candidateCount());
+        Tesselate_Protocol.putVarint(out, analysis.totalTriangles());
+        Tesselate_Protocol.putVarint(out, (int) words[0] & 15);
+        Tesselate_Protocol.putVarint(out, score(Tesselate_Engine.Player.RED));
+        Tesselate_Protocol.putVarint(out, score(Tesselate_Engine.Player.BLUE));
+        Tesselate_Protocol.putVarint(out, drawn);
+        for (int c = nextDrawn(0), last = -1; c >= 0; last = c, c = nextDrawn(c + 1)) {
+            Tesselate_Protocol.putVarint(out, c - last - 1);
+        }
+        Tesselate_Protocol.putVarint(out, blue);
+        for (int t = nextBlue(0), last = -1; t >= 0; last = t, t = nextBlue(t + 1)) {
+            Tesselate_Protocol.putVarint(out, t - last - 1);
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Reads a position written by {@link #toBytes()} for a board with the
+     * same layout as {@code analysis}. Only the format is checked here;
+     * {@link Tesselate_Engine#load} checks that the position obeys the rules.
+     */
+    public static Tesselate_PackedState fromBytes(Tesselate_BoardAnalysis analysis, byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            if (in.remaining() < 13 || in.getInt() != MAGIC) throw new IOException("not a saved position");
+            int version = in.get();
+            if (version != VERSION) throw new IOException("unsupported position version " + version);
+            if (in.getLong() != fingerprint(analysis)
+                    || Tesselate_Protocol.getVarint(in) != analysis.candidateCount()
+                    || Tesselate_Protocol.getVarint(in) != analysis.totalTriangles()) {
+                throw new IOException("position of another board");
+            }
+            Tesselate_PackedState p = new Tesselate_PackedState(analysis);
+            int turn = Tesselate_Protocol.getVarint(in);
+            int red = Tesselate_Protocol.getVarint(in), blue = Tesselate_Protocol.getVarint(in);
+            if (turn < 0 || turn > 15 || (turn >>> 1) > 6 || red < 0 || blue < 0
+                    || red > SCORE_MASK || blue > SCORE_MASK) {
+                throw new IOException("bad position header");
+            }
+            p.words[0] = turn | (long) red << 4 | (long) blue << (4 + SCORE_BITS);
+            readBits(in, p.words, 1, analysis.candidateCount());
+            readBits(in, p.words, p.triangleBase, analysis.totalTriangles());
+            if (in.hasRemaining()) throw new IOException("trailing bytes after position");
+            return p;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("truncated position", e);
+        }
+    }
+
+    private static void readBits(ByteBuffer in, long[] words, int base, int limit) throws IOException {
+        int count = Tesselate_Protocol.getVarint(in);
+        if (count < 0 || count > limit) throw new IOException("bad bitmap length " + count);
+        for (int i = 0, bit = -1; i < count; i++) {
+            int gap = Tesselate_Protocol.getVarint(in);
+            if (gap < 0 || gap >= limit - bit - 1) throw new IOException("bit out of range");
+            bit += gap + 1;
+            words[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static long fingerprint(Tesselate_BoardAnalysis analysis) {
+        return Tesselate_AnalysisCache.fingerprint(analysis.board(), analysis.maxEdgeLength(), analysis.dotRadius());
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * The ten hand-built dot layouts. Every pattern is centred on (cx, cy)
+ * and uses fixed spacing, so the same id always gives the same shape.
+ */
+public final class Tesselate_Patterns {
+
+    public static final int COUNT = 10;
+
+    private Tesselate_Patterns() {}
+
+    public static Tesselate_Board create(int pattern, double cx, double cy) {
+        Tesselate_Board.Builder points = new Tesselate_Board.Builder();
+        switch (pattern) {
+            case 0: createHexagonalGrid(points, cx, cy); break;
+            case 1: createConcentricCircles(points, cx, cy); break;
+            case 2: createTriangularGrid(points, cx, cy); break;
+            case 3: createSquareGrid(points, cx, cy); break;
+            case 4: createStarPattern(points, cx, cy); break;
+            case 5: createDiamondPattern(points, cx, cy); break;
+            case 6: createSpiral(points, cx, cy); break;
+            case 7: createFlowerPattern(points, cx, cy); break;
+            case 8: createDoubleHexagon(points, cx, cy); break;
+            case 9: createOctagonPattern(points, cx, cy); break;
+            default: throw new IllegalArgumentException("unknown pattern " + pattern);
+        }
+        return points.build(pattern);
+    }
+
+    private static void createHexagonalGrid(Tesselate_Board.Builder points, double cx, double cy) {
+        double spacing = 60;
+        for (int row = -2; row <= 2; row++) {
+            int cols = 4 - Math.abs(row);
+            for (int col = -cols; col <= cols; col++) {
+                double x = cx + col * spacing + (row % 2) * spacing / 2;
+                double y = cy + row * spacing * 0.866;
+                points.add(x, y);
+            }
+        }
+    }
+
+    private static void createConcentricCircles(Tesselate_Board.Builder points, double cx, double cy) {
+        points.add(cx, cy); // center
+        int[] dotsPerRing = {6, 8, 10};
+        double[] radii = {60, 110, 160};
+        
+        for (int ring = 0; ring < 3; ring++) {
+            int dots = dotsPerRing[ring];
+            double radius = radii[ring];
+            for (int i = 0; i < dots; i++) {
+                double angle = 2 * Math.PI * i / dots;
+                double x = cx + radius * Math.cos(angle);
+                double y = cy + radius * Math.sin(angle);
+                points.add(x, y);
+            }
+        }
+    }
+
+    private static void createTriangularGrid(Tesselate_Board.Builder points, double cx, double cy) {
+        double spacing = 65;
+        for (int row = 0; row < 5; row++) {
+            int dotsInRow = 5 - row;
+            for (int col = 0; col < dotsInRow; col++) {
+                double x = cx + (col - dotsInRow / 2.0) * spacing + row * spacing / 2;
+                double y = cy - 100 + row * spacing * 0.866;
+                points.add(x, y);
+            }
+        }
+    }
+
+    private static void createSquareGrid(Tesselate_Board.Builder points, double cx, double cy) {
+        double spacing = 70;
+        for (int row = -2; row <= 2; row++) {
+            for (int col = -2; col <= 2; col++) {
+                double x = cx + col * spacing;
+                double y = cy + row * spacing;
+                points.add(x, y);
+            }
+        }
+    }
+
+    private static void createStarPattern(Tesselate_Board.Builder points, double cx, double cy) {
+        points.add(cx, cy); // center
+        
+        // Inner star points
+        for (int i = 0; i < 5; i++) {
+            double angle = -Math.PI / 2 + 2 * Math.PI * i / 5;
+            double x = cx + 60 * Math.cos(angle);
+            double y = cy + 60 * Math.sin(angle);
+            points.add(x, y);
+        }
+        
+        // Outer star points
+        for (int i = 0; i < 5; i++) {
+            double angle = -Math.PI / 2 + 2 * Math.PI * i / 5 + Math.PI / 5;
+            double x = cx + 120 * Math.cos(angle);
+            double y = cy + 120 * Math.sin(angle);
+            points.add(x, y);
+        }
+        
+        // Far outer points
+        for (int i = 0; i < 5; i++) {
+            double angle = -Math.PI / 2 + 2 * Math.PI * i / 5;
+            double x = cx + 170 * Math.cos(angle);
+            double y = cy + 170 * Math.sin(angle);
+            points.add(x, y);
+        }
+    }
+
+    private static void createDiamondPattern(Tesselate_Board.Builder points, double cx, double cy) {
+        // Center
+        points.add(cx, cy);
+        
+        // Diamond layers
+        int[][] offsets = {
+            {0, -60}, {60, 0}, {0, 60}, {-60, 0},
+            {0, -120}, {80, -60}, {120, 0}, {80, 60}, {0, 120}, {-80, 60}, {-120, 0}, {-80, -60}
+        };
+        
+        for (int[] offset : offsets) {
+            points.add(cx + offset[0], cy + offset[1]);
+        }
+    }
+
+    private static void createSpiral(Tesselate_Board.Builder points, double cx, double cy) {
+        points.add(cx, cy);
+        double angle = 0;
+        double radius = 0;
+        
+        for (int i = 0; i < 20; i++) {
+            angle += 0.8;
+            radius += 8;
+            double x = cx + radius * Math.cos(angle);
+            double y = cy + radius * Math.sin(angle);
+            points.add(x, y);
+        }
+    }
+
+    private static void createFlowerPattern(Tesselate_Board.Builder points, double cx, double cy) {
+        points.add(cx, cy); // center
+        
+        // 6 petals
+        for (int petal = 0; petal < 6; petal++) {
+            double baseAngle = Math.PI * petal / 3;
+            
+            // 3 dots per petal
+            for (int i = 1; i <= 3; i++) {
+                double radius = i * 50;
+                double x = cx + radius * Math.cos(baseAngle);
+                double y = cy + radius * Math.sin(baseAngle);
+                points.add(x, y);
+            }
+        }
+    }
+
+    private static void createDoubleHexagon(Tesselate_Board.Builder points, double cx, double cy) {
+        // Inner hexagon
+        for (int i = 0; i < 6; i++) {
+            double angle = Math.PI * i / 3;
+            double x = cx + 60 * Math.cos(angle);
+            double y = cy + 60 * Math.sin(angle);
+            points.add(x, y);
+        }
+        
+        // Outer hexagon
+        for (int i = 0; i < 6; i++) {
+            double angle = Math.PI * i / 3;
+            double x = cx + 140 * Math.cos(angle);
+            double y = cy + 140 * Math.sin(angle);
+            points.add(x, y);
+        }
+        
+        // Mid points between inner and outer
+        for (int i = 0; i < 6; i++) {
+            double angle = Math.PI * i / 3 + Math.PI / 6;
+            double x = cx + 100 * Math.cos(angle);
+            double y = cy + 100 * Math.sin(angle);
+            points.add(x, y);
+        }
+    }
+
+    private static void createOctagonPattern(Tesselate_Board.Builder points, double cx, double cy) {
+        points.add(cx, cy); // center
+        
+        // Inner octagon
+        for (int i = 0; i < 8; i++) {
+            double angle = Math.PI * i / 4;
+            double x = cx + 70 * Math.cos(angle);
+            double y = cy + 70 * Math.sin(angle);
+            points.add(x, y);
+        }
+        
+        // Outer octagon
+        for (int i = 0; i < 8; i++) {
+            double angle = Math.PI * i / 4;
+            double x = cx + 140 * Math.cos(angle);
+            double y = cy + 140 * Math.sin(angle);
+            points.add(x, y);
+        }
+    }
+}
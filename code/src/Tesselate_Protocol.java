@@ -0,0 +1,165 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format between {@link Tesselate_Server} and its clients.
+ *
+ * Every message is one frame: a length byte, then the body, whose first
+ * byte is the message type. Integers inside a body are unsigned varints
+ * (7 bits per byte, low bits first), so a move is about six bytes on the
+ * wire. Every game action (a roll or an edge) has a sequence number, its
+ * index in the game; a client sends the number it expects next, and the
+ * server refuses anything stale.
+ *
+ * Client to server:
+ *   JOIN    gameId (0 = new game), pattern + 1 (0 = any)
+ *   ROLL    seq
+ *   MOVE    seq, dot a, dot b
+ *
+ * Server to client:
+ *   WELCOME gameId, seat, pattern, board centre x and y (2 x 8 bytes)
+ *   START   (both players are in)
+ *   ROLLED  seq, face
+ *   EDGE    seq, dot a, dot b
+ *   REJECT  seq, reason
+ *
+ * After WELCOME a late joiner gets the game so far as the same START,
+ * ROLLED and EDGE frames everyone else saw, so every client rebuilds the
+ * state with its own {@link Tesselate_Engine}.
+ */
+public final class Tesselate_Protocol {
+
+    public static final int DEFAULT_PORT = 47300;
+    public static final int MAX_FRAME = 255; // bytes after the length byte
+
+    // Client to server
+    public static final byte JOIN = 1;
+    public static final byte ROLL = 2;
+    public static final byte MOVE = 3;
+
+    // Server to client
+    public static final byte WELCOME = 10;
+    public static final byte START = 11;
+    public static final byte ROLLED = 12;
+    public static final byte EDGE = 13;
+    public static final byte REJECT = 14;
+
+    // Seats
+    public static final int SEAT_RED = 0;
+    public static final int SEAT_BLUE = 1;
+    public static final int SPECTATOR = 2;
+
+    // Reject reasons: Tesselate_Engine.MoveResult ordinals, or one of these
+    public static final int STALE = 64;          // seq is not the next action
+    public static final int NOT_YOUR_TURN = 65;  // or a spectator tried to play
+    public static final int NOT_STARTED = 66;    // waiting for the second player
+    public static final int ALREADY_ROLLED = 67; // edges are left in this turn
+    public static final int BAD_MESSAGE = 68;
+
+    private Tesselate_Protocol() {}
+
+    public static void join(ByteBuffer out, int gameId, int pattern) {
+        int start = begin(out, JOIN);
+        putVarint(out, gameId);
+        putVarint(out, pattern + 1);
+        end(out, start);
+    }
+
+    public static void roll(ByteBuffer out, int seq) {
+        int start = begin(out, ROLL);
+        putVarint(out, seq);
+        end(out, start);
+    }
+
+    public static void move(ByteBuffer out, int seq, int a, int b) {
+        int start = begin(out, MOVE);
+        putVarint(out, seq);
+        putVarint(out, a);
+        putVarint(out, b);
+        end(out, start);
+    }
+
+    public static void welcome(ByteBuffer out, int gameId, int seat, int pattern, double cx, double cy) {
+        int start = begin(out, WELCOME);
+        putVarint(out, gameId);
+        putVarint(out, seat);
+        putVarint(out, pattern);
+        out.putDouble(cx);
+        out.putDouble(cy);
+        end(out, start);
+    }
+
+    public static void start(ByteBuffer out) {
+        end(out, begin(out, START));
+    }
+
+    public static void rolled(ByteBuffer out, int seq, int face) {
+        int start = begin(out, ROLLED);
+        putVarint(out, seq);
+        putVarint(out, face);
+        end(out, start);
+    }
+
+    public static void edge(ByteBuffer out, int seq, int a, int b) {
+        int start = begin(out, EDGE);
+        putVarint(out, seq);
+        putVarint(out, a);
+        putVarint(out, b);
+        end(out, start);
+    }
+
+    public static void reject(ByteBuffer out, int seq, int reason) {
+        int start = begin(out, REJECT);
+        putVarint(out, seq);
+        putVarint(out, reason);
+        end(out, start);
+    }
+
+    /**
+     * True if {@code in} (in read mode) starts with a whole frame. The
+     * caller then takes it with {@link #nextFrame}.
+     */
+    public static boolean hasFrame(ByteBuffer in) {
+        return in.remaining() >= 1 && in.remaining() >= 1 + (in.get(in.position()) & 0xff);
+    }
+
+    /**
+     * Moves {@code in} past the whole frame at its start and returns the
+     * body (type and fields) as a buffer of its own, so a short or
+     * malformed body runs out instead of reading into the next frame.
+     */
+    public static ByteBuffer nextFrame(ByteBuffer in) {
+        int len = in.get() & 0xff;
+        ByteBuffer body = in.slice(in.position(), len);
+        in.position(in.position() + len);
+        return body;
+    }
+
+    public static void putVarint(ByteBuffer out, int v) {
+        while ((v & ~0x7f) != 0) {
+            out.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    public static int getVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7f) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    private static int begin(ByteBuffer out, byte type) {
+        int start = out.position();
+        out.put((byte) 0);
+        out.put(type);
+        return start;
+    }
+
+    private static void end(ByteBuffer out, int start) {
+        out.put(start, (byte) (out.position() - start - 1));
+    }
+}
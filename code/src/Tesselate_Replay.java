@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A recorded game (see {@link Tesselate_ReplayWriter} for the format).
+ *
+ * The file is memory-mapped and decoded once when opened. That pass
+ * plays the whole game on an engine, keeps the actions in flat arrays and
+ * packs the position every {@link #checkpointInterval()} actions, so
+ * {@link #stateAt} only replays from the nearest checkpoint. A damaged
+ * record ends the game at the last good action.
+ *
+ * Usage: java Tesselate_Replay file [action]
+ */
+public final class Tesselate_Replay {
+
+    private static final int MAX_CHECKPOINTS = 64; // bounds memory on big boards
+
+    private final long seed;
+    private final Tesselate_Board board;
+    private final Tesselate_BoardAnalysis analysis;
+
+    // Action i is a roll of face[i] if isRoll, else the edge (a[i], b[i])
+    private int count;
+    private boolean[] isRoll;
+    private int[] a;
+    private int[] b;
+
+    private final int interval;
+    private final Tesselate_PackedState[] checkpoints; // checkpoints[k] is the state after k * interval actions
+
+    private Tesselate_Replay(long seed, Tesselate_Board board, ByteBuffer records) {
+        this.seed = seed;
+        this.board = board;
+        this.analysis = Tesselate_AnalysisCache.shared().get(board, Tesselate_Engine.MAX_EDGE_LENGTH,
+                Tesselate_Engine.DOT_RADIUS);
+        decode(records);
+
+        interval = Math.max(64, (count + MAX_CHECKPOINTS - 1) / MAX_CHECKPOINTS);
+        checkpoints = new Tesselate_PackedState[count / interval + 1];
+        Tesselate_Engine e = new Tesselate_Engine(analysis, seed);
+        checkpoints[0] = e.pack();
+        for (int i = 0; i < count; i++) {
+            if (!apply(e, i)) {
+                count = i; // the file disagrees with the rules from here on
+                break;
+            }
+            if ((i + 1) % interval == 0) checkpoints[(i + 1) / interval] = e.pack();
+        }
+    }
+
+    public static Tesselate_Replay open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < 24 || buf.getInt() != Tesselate_ReplayWriter.MAGIC) {
+                throw new IOException(file + " is not a replay");
+            }
+            int version = buf.getInt();
+            if (version != Tesselate_ReplayWriter.VERSION) throw new IOException(file + ": unsupported version " + version);
+            long seed = buf.getLong();
+            int pattern = buf.getInt();
+            int dots = buf.getInt();
+            if (dots < 0 || dots > Tesselate_Engine.MAX_DOTS || buf.remaining() < 16L * dots) {
+                throw new IOException(file + " is truncated");
+            }
+            Tesselate_Board.Builder points = new Tesselate_Board.Builder();
+            for (int i = 0; i < dots; i++) points.add(buf.getDouble(), buf.getDouble());
+            return new Tesselate_Replay(seed, points.build(pattern), buf.slice());
+        }
+    }
+
+    public long seed() { return seed; }
+    public Tesselate_Board board() { return board; }
+    public Tesselate_BoardAnalysis analysis() { return analysis; }
+    public int actionCount() { return count; }
+    public int checkpointInterval() { return interval; }
+
+    public boolean isRoll(int i) { return isRoll[i]; }
+    public int face(int i) { return a[i]; }
+    public int edgeA(int i) { return a[i]; }
+    public int edgeB(int i) { return b[i]; }
+
+    /** A fresh engine holding the game after its first {@code actions} actions. */
+    public Tesselate_Engine stateAt(int actions) {
+        if (actions < 0 || actions > count) throw new IndexOutOfBoundsException("action " + actions + " of " + count);
+        Tesselate_Engine e = new Tesselate_Engine(analysis, seed);
+        e.load(checkpoints[actions / interval]);
+        for (int i = actions / interval * interval; i < actions; i++) apply(e, i);
+        return e;
+    }
+
+    private boolean apply(Tesselate_Engine e, int i) {
+        if (isRoll[i]) {
+            if (e.edgesRemaining() > 0 || a[i] < 1 || a[i] > 6) return false;
+            e.applyRoll(a[i]);
+            return true;
+        }
+        if (a[i] >= board.size() || b[i] >= board.size()) return false;
+        return e.applyMove(a[i], b[i]) == Tesselate_Engine.MoveResult.OK;
+    }
+
+    // Reads records until the data ends or a record is cut off; an undo drops the action before it
+    private void decode(ByteBuffer in) {
+        int cap = Math.max(16, in.remaining() / 2);
+        isRoll = new boolean[cap];
+        a = new int[cap];
+        b = new int[cap];
+        while (in.hasRemaining()) {
+            int start = in.position();
+            int head = varint(in);
+            if (head < 0) break;
+            if (head == 1) {
+                if (count > 0) count--;
+                continue;
+            }
+            int second = 0;
+            if ((head & 1) == 0) {
+                second = varint(in);
+                if (second < 0) {
+                    in.position(start);
+                    break;
+                }
+            }
+            if (count == a.length) {
+                isRoll = Arrays.copyOf(isRoll, count * 2);
+                a = Arrays.copyOf(a, count * 2);
+                b = Arrays.copyOf(b, count * 2);
+            }
+            isRoll[count] = (head & 1) == 1;
+            a[count] = head >>> 1;
+            b[count] = second;
+            count++;
+        }
+    }
+
+    // Non-negative varint, or -1 if the buffer ends inside it
+    private static int varint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; shift < 32 && in.hasRemaining(); shift += 7) {
+            byte x = in.get();
+            v |= (x & 0x7f) << shift;
+            if (x >= 0) return v;
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long t0 = System.nanoTime();
+        Tesselate_Replay replay = open(Path.of(args[0]));
+        long t1 = System.nanoTime();
+        int at = args.length > 1 ? Integer.parseInt(args[1]) : replay.actionCount();
+        Tesselate_Engine e = replay.stateAt(at);
+        long t2 = System.nanoTime();
+        System.out.printf("seed %d, pattern %d, %d dots, %d actions (opened in %.1f ms)%n",
+                replay.seed(), replay.board().pattern(), replay.board().size(), replay.actionCount(),
+                (t1 - t0) / 1e6);
+        System.out.printf("after %d actions (%.2f ms): %d edges, RED %d, BLUE %d, %s to move, %d edges left%n",
+                at, (t2 - t1) / 1e6, e.edgeCount(), e.score(Tesselate_Engine.Player.RED),
+                e.score(Tesselate_Engine.Player.BLUE), e.current(), e.edgesRemaining());
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records a game as it is played, in the format read by
+ * {@link Tesselate_Replay}.
+ *
+ * The header holds the game seed, the pattern id and every dot, so any
+ * board (built-in or generated) can be rebuilt exactly. After it, each
+ * action is appended as soon as it happens: a roll is one varint
+ * {@code face << 1 | 1}, an edge is the varints {@code a << 1} and
+ * {@code b}, and an undo of the previous action is a roll of face 0.
+ * Nothing is ever rewritten, so a crash loses at most the action being
+ * written, and the reader simply stops at the last whole one.
+ */
+public final class Tesselate_ReplayWriter implements Closeable {
+
+    static final int MAGIC = 0x5452504c; // "TRPL"
+    static final int VERSION = 1;
+
+    private final FileChannel ch;
+    private final ByteBuffer buf = ByteBuffer.allocate(16);
+
+    private Tesselate_ReplayWriter(FileChannel ch) {
+        this.ch = ch;
+    }
+
+    /** Creates the file (it must not exist yet) and writes the header. */
+    public static Tesselate_ReplayWriter create(Path file, long seed, Tesselate_Board board) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(24 + 16 * board.size());
+            header.putInt(MAGIC).putInt(VERSION).putLong(seed).putInt(board.pattern()).putInt(board.size());
+            for (int i = 0; i < board.size(); i++) header.putDouble(board.x(i)).putDouble(board.y(i));
+            header.flip();
+            while (header.hasRemaining()) ch.write(header);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        return new Tesselate_ReplayWriter(ch);
+    }
+
+    public void roll(int face) throws IOException {
+        buf.clear();
+        Tesselate_Protocol.putVarint(buf, face << 1 | 1);
+        write();
+    }
+
+    /** The last recorded action was taken back. */
+    public void undo() throws IOException {
+        roll(0);
+    }
+
+    public void edge(int a, int b) throws IOException {
+        buf.clear();
+        Tesselate_Protocol.putVarint(buf, a << 1);
+        Tesselate_Protocol.putVarint(buf, b);
+        write();
+    }
+
+    private void write() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+}
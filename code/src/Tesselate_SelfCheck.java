@@ -0,0 +1,467 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Checks the game against brute force and round trips, for use after
+ * changing the rules, the engine's bookkeeping or a file or wire format.
+ *
+ * Engine: random games with random rolls and legal edges on every
+ * built-in pattern and on generated boards of several densities. After
+ * every move the claimed triangles must be exactly the triples of drawn
+ * edges with no dot strictly inside, the legal moves exactly the undrawn
+ * pairs that are short enough, miss every dot and cross no drawn edge,
+ * and the scores what the claims were worth; the position must also
+ * come back unchanged through {@code load(pack())} and its save bytes. At
+ * the end of a game no two claimed triangles may overlap, and undoing the
+ * whole game must restore the starting position and hash.
+ *
+ * Protocol: varints survive a round trip, and a server sent an empty, a
+ * short and an overlong frame answers each with BAD_MESSAGE and still
+ * reads the frame after it.
+ *
+ * Replays: a recorded game with undos reopens at every action, and a copy
+ * cut off at any byte ends at the last whole record.
+ *
+ * Leaderboard: a file cut off at any byte reopens with exactly the games
+ * written whole before the cut and takes new games after it, and
+ * compaction keeps every standing and the ranking.
+ *
+ * Prints a summary and exits with status 1 at the first mismatch.
+ *
+ * Usage: java Tesselate_SelfCheck [games per board] [seed]
+ */
+public final class Tesselate_SelfCheck {
+
+    private static final double CENTER_X = Tesselate_Board.WIDTH / 2, CENTER_Y = Tesselate_Board.HEIGHT / 2;
+    private static final double[] SPACINGS = {110, 85, 65}; // average dot distance of the window's densities
+    private static final int CUTS = 64;                     // cut-off copies per replay and leaderboard
+
+    private final Tesselate_Board board;
+    private final boolean[] open; // pair (a, b), a < b, at a * n + b: short enough and clear of every dot
+    private int[] drawn = new int[64]; // drawn edges of the position being checked, as (a, b) with a < b
+    private int drawnCount;
+    private int positions;
+
+    private Tesselate_SelfCheck(Tesselate_Board board) {
+        this.board = board;
+        int n = board.size();
+        open = new boolean[n * n];
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                boolean clear = board.distance(a, b) <= Tesselate_Engine.MAX_EDGE_LENGTH;
+                for (int d = 0; d < n && clear; d++) {
+                    clear = d == a || d == b || Tesselate_Geometry.distanceToSegment(board.x(d), board.y(d),
+                            board.x(a), board.y(a), board.x(b), board.y(b)) > Tesselate_Engine.DOT_RADIUS;
+                }
+                open[a * n + b] = clear;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        SplittableRandom random = new SplittableRandom(seed);
+        Path dir = Files.createTempDirectory("tesselate-selfcheck");
+        int boards = Tesselate_Patterns.COUNT + SPACINGS.length, positions = 0;
+        try {
+            for (int p = 0; p < boards; p++) {
+                Tesselate_SelfCheck check = new Tesselate_SelfCheck(board(p, random));
+                try {
+                    for (int g = 0; g < games; g++) check.play(random.split());
+                } catch (IllegalStateException e) {
+                    throw new IllegalStateException("board " + p + ": " + e.getMessage(), e);
+                }
+                positions += check.positions;
+            }
+            checkProtocol();
+            for (int p : new int[] {random.nextInt(Tesselate_Patterns.COUNT), boards - 1}) {
+                checkReplay(dir.resolve("game-" + p + ".replay"), board(p, random), random);
+            }
+            checkLeaderboard(dir, random);
+        } catch (IllegalStateException | IOException e) {
+            System.out.println("FAILED: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            deleteAll(dir);
+        }
+        System.out.println("ok: " + positions + " positions on " + boards + " boards, protocol, replays, leaderboard");
+    }
+
+    // Pattern p, or past the patterns a generated board of the next density
+    private static Tesselate_Board board(int p, SplittableRandom random) {
+        if (p < Tesselate_Patterns.COUNT) return Tesselate_Patterns.create(p, CENTER_X, CENTER_Y);
+        double margin = 3 * Tesselate_Engine.DOT_RADIUS;
+        double w = Tesselate_Board.WIDTH - 2 * margin, h = Tesselate_Board.HEIGHT - 2 * margin;
+        double spacing = SPACINGS[p - Tesselate_Patterns.COUNT];
+        int count = Math.min(Tesselate_BoardGenerator.countFor(w, h, spacing), Tesselate_BoardGenerator.maxCount(w, h));
+        return Tesselate_BoardGenerator.generate(count, margin, margin, w, h, random.nextLong());
+    }
+
+    // ---- Engine --------------------------------------------------------------------------------
+
+    private void play(SplittableRandom random) throws IOException {
+        Tesselate_Engine e = new Tesselate_Engine(board, random.nextLong());
+        Tesselate_Engine loaded = new Tesselate_Engine(e.analysis(), 0);
+        long startHash = e.hash();
+        Tesselate_PackedState start = e.pack();
+        int[] scores = new int[2];
+        while (!e.isGameOver()) {
+            if (e.edgesRemaining() == 0) {
+                e.rollDice();
+            } else {
+                Tesselate_Engine.Player mover = e.current();
+                long[] moves = e.legalMoves();
+                long m = moves[random.nextInt(moves.length)];
+                int u = Tesselate_Engine.edgeU(m), v = Tesselate_Engine.edgeV(m);
+                if (e.applyMove(u, v) != Tesselate_Engine.MoveResult.OK) fail("legal edge " + u + "-" + v + " refused");
+                scores[mover.ordinal()] += e.lastClaimedCount() * (mover == Tesselate_Engine.Player.RED ? 2 : 1);
+            }
+            findDrawn(e);
+            checkTriangles(e);
+            checkMoves(e);
+            int red = e.score(Tesselate_Engine.Player.RED), blue = e.score(Tesselate_Engine.Player.BLUE);
+            if (red != scores[0] || blue != scores[1]) {
+                fail("scores " + red + ":" + blue + ", claims worth " + scores[0] + ":" + scores[1]);
+            }
+            checkPacking(e, loaded);
+            positions++;
+        }
+        checkOverlaps(e);
+        e.undoTo(0);
+        if (e.hash() != startHash || !e.pack().equals(start)) fail("undoTo(0) did not restore the start");
+    }
+
+    private void findDrawn(Tesselate_Engine e) {
+        int n = board.size();
+        drawnCount = 0;
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                if (!e.hasEdge(a, b)) continue;
+                if (2 * drawnCount + 2 > drawn.length) drawn = Arrays.copyOf(drawn, drawn.length * 2);
+                drawn[2 * drawnCount] = a;
+                drawn[2 * drawnCount + 1] = b;
+                drawnCount++;
+            }
+        }
+        if (drawnCount != e.edgeCount()) fail(e.edgeCount() + " edges counted, " + drawnCount + " drawn");
+    }
+
+    // Claimed triangles are exactly the drawn triples with no dot strictly inside
+    private void checkTriangles(Tesselate_Engine e) {
+        int n = board.size(), closed = 0;
+        for (int i = 0; i < drawnCount; i++) {
+            int a = drawn[2 * i], b = drawn[2 * i + 1];
+            for (int k = b + 1; k < n; k++) {
+                if (!e.hasEdge(a, k) || !e.hasEdge(b, k)) continue;
+                boolean empty = true;
+                for (int d = 0; d < n && empty; d++) empty = !strictlyInside(d, a, b, k);
+                if (empty) closed++;
+                if (empty != e.hasTriangle(a, b, k)) {
+                    fail("triangle " + a + "-" + b + "-" + k + (empty ? " not claimed" : " claimed with a dot inside"));
+                }
+            }
+        }
+        if (closed != e.triangleCount()) fail(e.triangleCount() + " triangles claimed, " + closed + " closed");
+    }
+
+    // The live set and check() both accept exactly the open, undrawn pairs no drawn edge crosses
+    private void checkMoves(Tesselate_Engine e) {
+        int n = board.size(), legal = 0;
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                boolean ok = isLegal(e, a, b);
+                if (ok) legal++;
+                if (e.edgesRemaining() > 0 && ok != (e.check(a, b) == Tesselate_Engine.MoveResult.OK)) {
+                    fail("check(" + a + ", " + b + ") is " + e.check(a, b));
+                }
+            }
+        }
+        long[] moves = e.legalMoves();
+        for (long m : moves) {
+            int a = Tesselate_Engine.edgeU(m), b = Tesselate_Engine.edgeV(m);
+            if (!isLegal(e, a, b)) fail("edge " + a + "-" + b + " wrongly in the live set");
+        }
+        if (moves.length != legal || e.legalMoveCount() != legal) {
+            fail(e.legalMoveCount() + " legal moves, " + legal + " by brute force");
+        }
+    }
+
+    private boolean isLegal(Tesselate_Engine e, int a, int b) {
+        if (!open[a * board.size() + b] || e.hasEdge(a, b)) return false;
+        for (int i = 0; i < drawnCount; i++) {
+            if (cross(a, b, drawn[2 * i], drawn[2 * i + 1])) return false;
+        }
+        return true;
+    }
+
+    private static void checkPacking(Tesselate_Engine e, Tesselate_Engine loaded) throws IOException {
+        Tesselate_PackedState p = e.pack();
+        loaded.load(Tesselate_PackedState.fromBytes(e.analysis(), p.toBytes()));
+        if (loaded.hash() != e.hash() || !loaded.pack().equals(p)) fail("load(pack()) changed the position");
+    }
+
+    // No corner of one claimed triangle strictly inside another, and no two sides properly crossing
+    private void checkOverlaps(Tesselate_Engine e) {
+        int n = board.size(), count = 0;
+        int[] tris = new int[e.triangleCount() * 3];
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                for (int k = b + 1; k < n; k++) {
+                    if (e.hasTriangle(a, b, k)) {
+                        tris[count++] = a;
+                        tris[count++] = b;
+                        tris[count++] = k;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < count; i += 3) {
+            for (int j = i + 3; j < count; j += 3) {
+                for (int x = 0; x < 3; x++) {
+                    if (strictlyInside(tris[j + x], tris[i], tris[i + 1], tris[i + 2])
+                            || strictlyInside(tris[i + x], tris[j], tris[j + 1], tris[j + 2])) {
+                        fail("claimed triangles overlap at dot " + tris[j + x]);
+                    }
+                    for (int y = 0; y < 3; y++) {
+                        if (cross(tris[i + x], tris[i + (x + 1) % 3], tris[j + y], tris[j + (y + 1) % 3])) {
+                            fail("claimed triangles have crossing sides");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Segments u-v and a-b meet somewhere other than a shared end
+    private boolean cross(int u, int v, int a, int b) {
+        if (u == a || u == b || v == a || v == b) return false;
+        return Tesselate_Geometry.segmentsIntersect(board.x(u), board.y(u), board.x(v), board.y(v),
+                board.x(a), board.y(a), board.x(b), board.y(b));
+    }
+
+    private boolean strictlyInside(int d, int a, int b, int c) {
+        if (d == a || d == b || d == c) return false;
+        double x = board.x(d), y = board.y(d);
+        int o1 = Tesselate_Geometry.orientation(board.x(a), board.y(a), board.x(b), board.y(b), x, y);
+        int o2 = Tesselate_Geometry.orientation(board.x(b), board.y(b), board.x(c), board.y(c), x, y);
+        int o3 = Tesselate_Geometry.orientation(board.x(c), board.y(c), board.x(a), board.y(a), x, y);
+        return o1 != 0 && o1 == o2 && o2 == o3;
+    }
+
+    // ---- Protocol ------------------------------------------------------------------------------
+
+    private static void checkProtocol() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(5);
+        for (int v : new int[] {0, 1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152, Integer.MAX_VALUE, -1}) {
+            buf.clear();
+            Tesselate_Protocol.putVarint(buf, v);
+            buf.flip();
+            if (Tesselate_Protocol.getVarint(buf) != v || buf.hasRemaining()) fail("varint " + v + " changed");
+        }
+        try {
+            Tesselate_Protocol.getVarint(ByteBuffer.wrap(new byte[] {-1, -1, -1, -1, -1, 1}));
+            fail("a six-byte varint was read");
+        } catch (IllegalArgumentException expected) {
+            // varints end within five bytes
+        }
+
+        Tesselate_Server server = new Tesselate_Server(0);
+        Thread loop = new Thread(server, "selfcheck-server");
+        loop.setDaemon(true);
+        loop.start();
+        try (SocketChannel ch = SocketChannel.open(new InetSocketAddress("localhost", server.port()))) {
+            ByteBuffer out = ByteBuffer.allocate(64);
+            out.put((byte) 0);                                                    // no type
+            out.put((byte) 2).put(Tesselate_Protocol.MOVE).put((byte) 0);         // MOVE without its dots
+            out.put((byte) 4).put(Tesselate_Protocol.JOIN).put((byte) 0).put((byte) 0).put((byte) 9); // a byte too many
+            Tesselate_Protocol.join(out, 0, 0);
+            out.flip();
+            while (out.hasRemaining()) ch.write(out);
+
+            ch.configureBlocking(false);
+            ByteBuffer in = ByteBuffer.allocate(4 * (1 + Tesselate_Protocol.MAX_FRAME)).flip();
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            for (int i = 0; i < 4; i++) {
+                while (!Tesselate_Protocol.hasFrame(in)) {
+                    in.compact();
+                    int n = ch.read(in);
+                    in.flip();
+                    if (n < 0) fail("server closed the connection");
+                    if (n == 0 && System.nanoTime() - deadline > 0) fail("no answer to frame " + i);
+                    if (n == 0) LockSupport.parkNanos(1_000_000);
+                }
+                ByteBuffer body = Tesselate_Protocol.nextFrame(in);
+                byte type = body.get();
+                if (i < 3) {
+                    if (type != Tesselate_Protocol.REJECT) fail("malformed frame " + i + " answered with " + type);
+                    Tesselate_Protocol.getVarint(body);
+                    int reason = Tesselate_Protocol.getVarint(body);
+                    if (reason != Tesselate_Protocol.BAD_MESSAGE) fail("malformed frame " + i + " refused as " + reason);
+                } else if (type != Tesselate_Protocol.WELCOME) {
+                    fail("JOIN after malformed frames answered with message " + type);
+                }
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    // ---- Replays -------------------------------------------------------------------------------
+
+    // Records a game with a few undos, noting after every record the file size, actions in force and hash
+    private static void checkReplay(Path file, Tesselate_Board b, SplittableRandom random) throws IOException {
+        long seed = random.nextLong();
+        Tesselate_Engine e = new Tesselate_Engine(b, seed);
+        long[] line = new long[16];   // line[i]: hash after the first i actions in force
+        List<long[]> marks = new ArrayList<>();
+        int actions = 0;
+        line[0] = e.hash();
+        try (Tesselate_ReplayWriter w = Tesselate_ReplayWriter.create(file, seed, b)) {
+            marks.add(new long[] {Files.size(file), 0, e.hash()});
+            while (!e.isGameOver()) {
+                if (actions > 0 && random.nextInt(8) == 0) {
+                    e.undo();
+                    w.undo();
+                    actions--;
+                } else {
+                    if (e.edgesRemaining() == 0) {
+                        w.roll(e.rollDice());
+                    } else {
+                        long m = e.legalMoves()[random.nextInt(e.legalMoveCount())];
+                        e.applyMove(Tesselate_Engine.edgeU(m), Tesselate_Engine.edgeV(m));
+                        w.edge(Tesselate_Engine.edgeU(m), Tesselate_Engine.edgeV(m));
+                    }
+                    if (++actions == line.length) line = Arrays.copyOf(line, actions * 2);
+                    line[actions] = e.hash();
+                }
+                marks.add(new long[] {Files.size(file), actions, e.hash()});
+            }
+        }
+
+        Tesselate_Replay replay = Tesselate_Replay.open(file);
+        if (replay.actionCount() != actions) fail("replay has " + replay.actionCount() + " of " + actions + " actions");
+        for (int i = 0; i <= actions; i++) {
+            if (replay.stateAt(i).hash() != line[i]) fail("replay differs after action " + i);
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        int header = (int) marks.get(0)[0];
+        for (int k = 0; k < CUTS; k++) {
+            int len = header + random.nextInt(bytes.length - header + 1);
+            long[] whole = marks.get(0);
+            for (long[] m : marks) if (m[0] <= len) whole = m;
+            // A file of its own per cut: a replay is mapped, and a mapped file cannot be rewritten everywhere
+            Path cut = file.resolveSibling("cut-" + k + "-" + file.getFileName());
+            Files.write(cut, Arrays.copyOf(bytes, len));
+            Tesselate_Replay r = Tesselate_Replay.open(cut);
+            if (r.actionCount() != whole[1] || r.stateAt(r.actionCount()).hash() != whole[2]) {
+                fail("replay cut at byte " + len + " has " + r.actionCount() + " actions, not " + whole[1]);
+            }
+        }
+    }
+
+    // ---- Leaderboard ---------------------------------------------------------------------------
+
+    private static final String[] PLAYERS = {"Ada", "Bo", "Cy", "Dee", "Eli", "Fay", "Gus", "Hal"};
+
+    private static void checkLeaderboard(Path dir, SplittableRandom random) throws IOException {
+        Path file = dir.resolve("selfcheck.leaderboard");
+        List<int[]> games = new ArrayList<>(); // red, blue, red score, blue score
+        List<Long> sizes = new ArrayList<>();  // file size after the first i games
+        try (Tesselate_Leaderboard board = Tesselate_Leaderboard.open(file)) {
+            sizes.add(Files.size(file));
+            for (int g = 0; g < 200; g++) {
+                int red = random.nextInt(PLAYERS.length);
+                int blue = (red + 1 + random.nextInt(PLAYERS.length - 1)) % PLAYERS.length;
+                int[] game = {red, blue, random.nextInt(30), random.nextInt(30)};
+                board.record(PLAYERS[red], PLAYERS[blue], game[2], game[3]);
+                games.add(game);
+                sizes.add(Files.size(file));
+            }
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        int header = (int) (long) sizes.get(0);
+        for (int k = 0; k < CUTS; k++) {
+            int len = header + random.nextInt(bytes.length - header + 1);
+            int whole = 0;
+            while (whole < games.size() && sizes.get(whole + 1) <= len) whole++;
+            List<int[]> kept = new ArrayList<>(games.subList(0, whole));
+            Path cut = dir.resolve("cut-" + k + ".leaderboard");
+            Files.write(cut, Arrays.copyOf(bytes, len));
+            try (Tesselate_Leaderboard board = Tesselate_Leaderboard.open(cut)) {
+                sameStandings(board, dir.resolve("ref-" + k + ".leaderboard"), kept, "cut at byte " + len);
+                board.record(PLAYERS[0], PLAYERS[1], 1, 0);
+            }
+            kept.add(new int[] {0, 1, 1, 0});
+            try (Tesselate_Leaderboard board = Tesselate_Leaderboard.open(cut)) {
+                sameStandings(board, dir.resolve("ref-" + k + "b.leaderboard"), kept, "game after cut " + len);
+            }
+        }
+
+        try (Tesselate_Leaderboard board = Tesselate_Leaderboard.open(file)) {
+            board.compact();
+        }
+        try (Tesselate_Leaderboard board = Tesselate_Leaderboard.open(file)) {
+            sameStandings(board, dir.resolve("ref.leaderboard"), games, "compaction");
+        }
+    }
+
+    // Compares board with a new leaderboard at ref that recorded just these games
+    private static void sameStandings(Tesselate_Leaderboard board, Path ref, List<int[]> games, String what)
+            throws IOException {
+        try (Tesselate_Leaderboard want = Tesselate_Leaderboard.open(ref)) {
+            for (int[] g : games) want.record(PLAYERS[g[0]], PLAYERS[g[1]], g[2], g[3]);
+            for (String name : PLAYERS) {
+                // A cut between a new player's record and their first game leaves them with none
+                if (!played(want, name)) {
+                    if (played(board, name)) fail(what + ": " + name + " has games never recorded");
+                    continue;
+                }
+                Tesselate_Leaderboard.Standing s = board.get(name), w = want.get(name);
+                if (s == null || s.games() != w.games() || s.wins() != w.wins() || s.draws() != w.draws()
+                        || s.points() != w.points() || s.rating() != w.rating()) {
+                    fail(what + ": " + name + " does not stand as recorded");
+                }
+            }
+            // Players a cut left without games rank too, so only the order of the others must agree
+            for (String a : PLAYERS) {
+                for (String b : PLAYERS) {
+                    if (!played(want, a) || !played(want, b)) continue;
+                    if (board.rank(a) < board.rank(b) != want.rank(a) < want.rank(b)) {
+                        fail(what + ": " + a + " and " + b + " ranked the wrong way round");
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean played(Tesselate_Leaderboard board, String name) {
+        Tesselate_Leaderboard.Standing s = board.get(name);
+        return s != null && s.games() > 0;
+    }
+
+    private static void deleteAll(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) Files.deleteIfExists(f);
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            System.out.println("Left " + dir + " behind: " + e.getMessage());
+        }
+    }
+
+    private static void fail(String message) {
+        throw new IllegalStateException(message);
+    }
+}
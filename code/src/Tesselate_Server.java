@@ -0,0 +1,406 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Authoritative LAN game server.
+ *
+ * One thread runs a selector over every connection. A game is one
+ * {@link Tesselate_Engine}; the server rolls the dice, validates each move
+ * against the engine and broadcasts the accepted action to both seats and
+ * every spectator (see {@link Tesselate_Protocol}). Validation is a table
+ * lookup plus, at worst, a grid walk, so one thread keeps up with
+ * thousands of games. Boards are the built-in patterns at a fixed centre,
+ * and their analyses are built once and shared by every game.
+ *
+ * Usage: java Tesselate_Server [port]
+ */
+public final class Tesselate_Server implements Runnable {
+
+    /** Board centre every game uses; clients get it in WELCOME. */
+    public static final double CENTER_X = Tesselate_Board.WIDTH / 2, CENTER_Y = Tesselate_Board.HEIGHT / 2;
+
+    private static final int MAX_BUFFERED = 1 << 20; // a client this far behind is dropped
+    private static final long STATS_EVERY_NANOS = 10_000_000_000L;
+
+    private final Selector selector;
+    private final ServerSocketChannel acceptor;
+    private final Random random = new Random();
+    private final Map<Integer, Game> games = new HashMap<>();
+    private final Tesselate_BoardAnalysis[] analyses = new Tesselate_BoardAnalysis[Tesselate_Patterns.COUNT];
+    private final ArrayDeque<Conn> dirty = new ArrayDeque<>();
+    private final ByteBuffer frame = ByteBuffer.allocate(1 + Tesselate_Protocol.MAX_FRAME);
+    private int nextGameId = 1;
+    private volatile boolean running = true;
+
+    // Counters for the periodic report
+    private int connections;
+    private long actions;
+    private long validateNanos;
+
+    public Tesselate_Server(int port) throws IOException {
+        selector = Selector.open();
+        acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress(port), 1024);
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Tesselate_Protocol.DEFAULT_PORT;
+        Tesselate_Server server = new Tesselate_Server(port);
+        System.out.println("Tessellate server listening on port " + server.port());
+        server.run();
+    }
+
+    public int port() {
+        return acceptor.socket().getLocalPort();
+    }
+
+    /** Stops the loop; {@link #run} returns after its current round. */
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long nextStats = System.nanoTime() + STATS_EVERY_NANOS;
+        try {
+            while (running) {
+                selector.select(1000);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else {
+                        Conn c = (Conn) key.attachment();
+                        if (key.isReadable()) read(c);
+                        if (key.isValid() && key.isWritable()) markDirty(c);
+                    }
+                }
+                selector.selectedKeys().clear();
+                flushDirty();
+                if (System.nanoTime() - nextStats > 0) {
+                    report();
+                    nextStats = System.nanoTime() + STATS_EVERY_NANOS;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Server stopped: " + e);
+        } finally {
+            for (SelectionKey key : selector.keys()) closeQuietly(key);
+            closeQuietly(selector);
+        }
+    }
+
+    private void report() {
+        if (actions == 0) return;
+        System.out.printf("games %d, connections %d, actions %d, mean validation %.2f us%n",
+                games.size(), connections, actions, validateNanos / 1000.0 / actions);
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = acceptor.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            Conn c = new Conn(ch);
+            c.key = ch.register(selector, SelectionKey.OP_READ, c);
+            connections++;
+        }
+    }
+
+    private void read(Conn c) {
+        int n;
+        try {
+            n = c.ch.read(c.in);
+        } catch (IOException e) {
+            n = -1;
+        }
+        if (n < 0) {
+            drop(c);
+            return;
+        }
+        c.in.flip();
+        while (Tesselate_Protocol.hasFrame(c.in)) {
+            try {
+                handle(c, Tesselate_Protocol.nextFrame(c.in));
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                send(c, out -> Tesselate_Protocol.reject(out, -1, Tesselate_Protocol.BAD_MESSAGE));
+            }
+            if (!c.key.isValid()) return;
+        }
+        c.in.compact();
+    }
+
+    // in is one frame's body; every field is read and the body checked used up before anything is done
+    private void handle(Conn c, ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case Tesselate_Protocol.JOIN: {
+                int gameId = Tesselate_Protocol.getVarint(in);
+                int pattern = Tesselate_Protocol.getVarint(in) - 1;
+                endOfBody(in);
+                join(c, gameId, pattern);
+                break;
+            }
+            case Tesselate_Protocol.ROLL: {
+                int seq = Tesselate_Protocol.getVarint(in);
+                endOfBody(in);
+                roll(c, seq);
+                break;
+            }
+            case Tesselate_Protocol.MOVE: {
+                int seq = Tesselate_Protocol.getVarint(in);
+                int a = Tesselate_Protocol.getVarint(in);
+                int b = Tesselate_Protocol.getVarint(in);
+                endOfBody(in);
+                move(c, seq, a, b);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown message " + type);
+        }
+    }
+
+    private static void endOfBody(ByteBuffer in) {
+        if (in.hasRemaining()) throw new IllegalArgumentException(in.remaining() + " bytes after the message");
+    }
+
+    private void join(Conn c, int gameId, int pattern) {
+        if (c.game != null) leave(c);
+        Game g = gameId > 0 ? games.get(gameId) : null;
+        if (g == null) {
+            if (gameId <= 0) {
+                while (games.containsKey(nextGameId)) nextGameId++;
+                gameId = nextGameId++;
+            }
+            if (pattern < 0 || pattern >= Tesselate_Patterns.COUNT) pattern = random.nextInt(Tesselate_Patterns.COUNT);
+            g = new Game(gameId, pattern, new Tesselate_Engine(analysis(pattern), random.nextLong()));
+            games.put(gameId, g);
+        }
+
+        c.game = g;
+        if (g.seats[Tesselate_Protocol.SEAT_RED] == null) c.seat = Tesselate_Protocol.SEAT_RED;
+        else if (g.seats[Tesselate_Protocol.SEAT_BLUE] == null) c.seat = Tesselate_Protocol.SEAT_BLUE;
+        else c.seat = Tesselate_Protocol.SPECTATOR;
+        if (c.seat == Tesselate_Protocol.SPECTATOR) g.spectators.add(c);
+        else g.seats[c.seat] = c;
+
+        final Game game = g;
+        send(c, out -> Tesselate_Protocol.welcome(out, game.id, c.seat, game.pattern, CENTER_X, CENTER_Y));
+        // Catch up on everything broadcast so far
+        c.ensure(g.history.position());
+        c.out.put(g.history.array(), 0, g.history.position());
+
+        if (!g.started && g.seats[0] != null && g.seats[1] != null) {
+            g.started = true;
+            broadcast(g, Tesselate_Protocol::start);
+        }
+    }
+
+    private void roll(Conn c, int seq) {
+        long t0 = System.nanoTime();
+        Game g = c.game;
+        int reason = refuse(c, seq);
+        if (reason < 0 && g.engine.edgesRemaining() > 0) reason = Tesselate_Protocol.ALREADY_ROLLED;
+        if (reason >= 0) {
+            reject(c, seq, reason);
+            return;
+        }
+        int face = g.engine.rollDice();
+        g.seq++;
+        validateNanos += System.nanoTime() - t0;
+        actions++;
+        broadcast(g, out -> Tesselate_Protocol.rolled(out, seq, face));
+    }
+
+    private void move(Conn c, int seq, int a, int b) {
+        long t0 = System.nanoTime();
+        Game g = c.game;
+        int reason = refuse(c, seq);
+        if (reason < 0) {
+            int dots = g.engine.board().size();
+            if (a < 0 || b < 0 || a >= dots || b >= dots) {
+                reason = Tesselate_Protocol.BAD_MESSAGE;
+            } else {
+                Tesselate_Engine.MoveResult result = g.engine.applyMove(a, b);
+                if (result != Tesselate_Engine.MoveResult.OK) reason = result.ordinal();
+            }
+        }
+        if (reason >= 0) {
+            reject(c, seq, reason);
+            return;
+        }
+        g.seq++;
+        validateNanos += System.nanoTime() - t0;
+        actions++;
+        broadcast(g, out -> Tesselate_Protocol.edge(out, seq, a, b));
+    }
+
+    // Reason the sender may not act now, or -1
+    private static int refuse(Conn c, int seq) {
+        Game g = c.game;
+        if (g == null || c.seat == Tesselate_Protocol.SPECTATOR) return Tesselate_Protocol.NOT_YOUR_TURN;
+        if (!g.started) return Tesselate_Protocol.NOT_STARTED;
+        if (seq != g.seq) return Tesselate_Protocol.STALE;
+        if (g.engine.isGameOver()) return Tesselate_Engine.MoveResult.NO_EDGES_LEFT.ordinal();
+        if (g.engine.current().ordinal() != c.seat) return Tesselate_Protocol.NOT_YOUR_TURN;
+        return -1;
+    }
+
+    private void reject(Conn c, int seq, int reason) {
+        send(c, out -> Tesselate_Protocol.reject(out, seq, reason));
+    }
+
+    private Tesselate_BoardAnalysis analysis(int pattern) {
+        if (analyses[pattern] == null) {
+            analyses[pattern] = Tesselate_AnalysisCache.shared().get(Tesselate_Patterns.create(pattern, CENTER_X, CENTER_Y),
+                    Tesselate_Engine.MAX_EDGE_LENGTH, Tesselate_Engine.DOT_RADIUS);
+        }
+        return analyses[pattern];
+    }
+
+    /** Writes one frame into a buffer. */
+    private interface Encoder {
+        void encode(ByteBuffer out);
+    }
+
+    private void send(Conn c, Encoder e) {
+        c.ensure(frame.capacity());
+        e.encode(c.out);
+        markDirty(c);
+    }
+
+    // Encodes once, then copies to the game's history and every member
+    private void broadcast(Game g, Encoder e) {
+        frame.clear();
+        e.encode(frame);
+        frame.flip();
+        int n = frame.remaining();
+        if (g.history.remaining() < n) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(g.history.capacity() * 2, g.history.position() + n));
+            g.history.flip();
+            bigger.put(g.history);
+            g.history = bigger;
+        }
+        g.history.put(frame.array(), 0, n);
+        for (Conn c : g.seats) {
+            if (c != null) copyFrame(c, n);
+        }
+        for (int i = 0; i < g.spectators.size(); i++) copyFrame(g.spectators.get(i), n);
+    }
+
+    private void copyFrame(Conn c, int n) {
+        c.ensure(n);
+        c.out.put(frame.array(), 0, n);
+        markDirty(c);
+    }
+
+    private void markDirty(Conn c) {
+        if (!c.queued) {
+            c.queued = true;
+            dirty.add(c);
+        }
+    }
+
+    private void flushDirty() {
+        Conn c;
+        while ((c = dirty.poll()) != null) {
+            c.queued = false;
+            if (!c.key.isValid()) continue;
+            try {
+                c.out.flip();
+                c.ch.write(c.out);
+                c.out.compact();
+            } catch (IOException e) {
+                drop(c);
+                continue;
+            }
+            boolean pending = c.out.position() > 0;
+            if (pending && c.out.position() > MAX_BUFFERED) {
+                drop(c);
+                continue;
+            }
+            c.key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    private void drop(Conn c) {
+        if (c.game != null) leave(c);
+        closeQuietly(c.key);
+        connections--;
+    }
+
+    // Frees the seat; the game lives on until nobody is left in it
+    private void leave(Conn c) {
+        Game g = c.game;
+        if (c.seat == Tesselate_Protocol.SPECTATOR) g.spectators.remove(c);
+        else if (g.seats[c.seat] == c) g.seats[c.seat] = null;
+        c.game = null;
+        if (g.seats[0] == null && g.seats[1] == null && g.spectators.isEmpty()) games.remove(g.id);
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        closeQuietly(key.channel());
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+            // already closing
+        }
+    }
+
+    private static final class Game {
+        final int id;
+        final int pattern;
+        final Tesselate_Engine engine;
+        final Conn[] seats = new Conn[2];
+        final List<Conn> spectators = new ArrayList<>();
+        boolean started;
+        int seq; // number of actions so far; the next action must carry it
+        ByteBuffer history = ByteBuffer.allocate(256); // every frame broadcast so far
+
+        Game(int id, int pattern, Tesselate_Engine engine) {
+            this.id = id;
+            this.pattern = pattern;
+            this.engine = engine;
+        }
+    }
+
+    private static final class Conn {
+        final SocketChannel ch;
+        final ByteBuffer in = ByteBuffer.allocate(4 * (1 + Tesselate_Protocol.MAX_FRAME));
+        ByteBuffer out = ByteBuffer.allocate(1024); // write mode; flushed by the selector loop
+        SelectionKey key;
+        boolean queued;
+        Game game;
+        int seat;
+
+        Conn(SocketChannel ch) {
+            this.ch = ch;
+        }
+
+        void ensure(int n) {
+            if (out.remaining() >= n) return;
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + n));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+    }
+}
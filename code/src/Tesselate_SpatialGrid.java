@@ -0,0 +1,223 @@
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the board that buckets ids (dots or edges) by the cells
+ * they touch. Queries walk only the cells along a segment corridor, so a
+ * crossing or dot-blocking check looks at nearby items instead of all of them.
+ *
+ * An id may sit in several cells and can therefore be visited more than once;
+ * every check run through it is idempotent, so callers just ignore repeats.
+ */
+public final class Tesselate_SpatialGrid {
+
+    /** Callback for queries; return true to stop the walk early. */
+    public interface Visitor {
+        boolean visit(int id);
+    }
+
+    private final double minX, minY, cellSize;
+    private final int cols, rows;
+    private final int[][] cells;
+    private final int[] counts;
+
+    public Tesselate_SpatialGrid(double minX, double minY, double maxX, double maxY, double cellSize) {
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.cols = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize) + 1);
+        this.rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize) + 1);
+        this.cells = new int[cols * rows][];
+        this.counts = new int[cols * rows];
+    }
+
+    private Tesselate_SpatialGrid(Tesselate_SpatialGrid src) {
+        this.minX = src.minX;
+        this.minY = src.minY;
+        this.cellSize = src.cellSize;
+        this.cols = src.cols;
+        this.rows = src.rows;
+        this.counts = src.counts.clone();
+        this.cells = new int[src.cells.length][];
+        for (int i = 0; i < cells.length; i++) {
+            if (src.cells[i] != null) cells[i] = Arrays.copyOf(src.cells[i], src.cells[i].length);
+        }
+    }
+
+    public Tesselate_SpatialGrid copy() {
+        return new Tesselate_SpatialGrid(this);
+    }
+
+    /** Grid holding every dot of the board; each dot sits in exactly one cell. */
+    public static Tesselate_SpatialGrid forDots(Tesselate_Board board, double cellSize) {
+        Tesselate_SpatialGrid grid = forBounds(board, cellSize);
+        for (int i = 0; i < board.size(); i++) {
+            grid.insertPoint(i, board.x(i), board.y(i));
+        }
+        return grid;
+    }
+
+    /** Empty grid spanning the board's bounding box. */
+    public static Tesselate_SpatialGrid forBounds(Tesselate_Board board, double cellSize) {
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < board.size(); i++) {
+            x0 = Math.min(x0, board.x(i));
+            y0 = Math.min(y0, board.y(i));
+            x1 = Math.max(x1, board.x(i));
+            y1 = Math.max(y1, board.y(i));
+        }
+        if (board.size() == 0) { x0 = y0 = x1 = y1 = 0; }
+        return new Tesselate_SpatialGrid(x0, y0, x1, y1, cellSize);
+    }
+
+    /**
+     * Cell size for a dot grid: about one dot per cell on average, but never
+     * finer than a dot diameter nor coarser than a quarter of the longest edge.
+     */
+    public static double dotCellSize(Tesselate_Board board, double dotRadius, double maxEdgeLength) {
+        double w = 0, h = 0;
+        if (board.size() > 0) {
+            double x0 = board.x(0), x1 = x0, y0 = board.y(0), y1 = y0;
+            for (int i = 1; i < board.size(); i++) {
+                x0 = Math.min(x0, board.x(i)); x1 = Math.max(x1, board.x(i));
+                y0 = Math.min(y0, board.y(i)); y1 = Math.max(y1, board.y(i));
+            }
+            w = x1 - x0;
+            h = y1 - y0;
+        }
+        double spacing = Math.sqrt(Math.max(1, w * h) / Math.max(1, board.size()));
+        return Math.max(2 * dotRadius, Math.min(maxEdgeLength / 4, spacing));
+    }
+
+    /** Empties every cell but keeps the bucket arrays. */
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    public void insertPoint(int id, double x, double y) {
+        add(cellIndex(col(x), row(y)), id);
+    }
+
+    /** Adds the segment to every cell its corridor passes through. */
+    public void insertSegment(int id, double x1, double y1, double x2, double y2) {
+        // A hair of padding keeps rounding in bandX from dropping a boundary cell
+        double pad = cellSize * 1e-6;
+        int r0 = row(Math.min(y1, y2) - pad), r1 = row(Math.max(y1, y2) + pad);
+        for (int r = r0; r <= r1; r++) {
+            int c0 = colStart(r, x1, y1, x2, y2, pad), c1 = colEnd(r, x1, y1, x2, y2, pad);
+            for (int c = c0; c <= c1; c++) add(cellIndex(c, r), id);
+        }
+    }
+
+    /** Takes the segment out of the cells {@link #insertSegment} put it in; pass the same coordinates. */
+    public void removeSegment(int id, double x1, double y1, double x2, double y2) {
+        double pad = cellSize * 1e-6;
+        int r0 = row(Math.min(y1, y2) - pad), r1 = row(Math.max(y1, y2) + pad);
+        for (int r = r0; r <= r1; r++) {
+            int c0 = colStart(r, x1, y1, x2, y2, pad), c1 = colEnd(r, x1, y1, x2, y2, pad);
+            for (int c = c0; c <= c1; c++) remove(cellIndex(c, r), id);
+        }
+    }
+
+    /**
+     * Visits every id in the cells within {@code pad} of the segment
+     * (x1, y1)-(x2, y2). Returns true if the visitor stopped the walk.
+     */
+    public boolean query(double x1, double y1, double x2, double y2, double pad, Visitor v) {
+        int r0 = row(Math.min(y1, y2) - pad), r1 = row(Math.max(y1, y2) + pad);
+        for (int r = r0; r <= r1; r++) {
+            int c0 = colStart(r, x1, y1, x2, y2, pad), c1 = colEnd(r, x1, y1, x2, y2, pad);
+            for (int c = c0; c <= c1; c++) {
+                int cell = cellIndex(c, r);
+                int[] ids = cells[cell];
+                for (int i = 0, n = counts[cell]; i < n; i++) {
+                    if (v.visit(ids[i])) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Visits every id in the cells overlapping the square of half-size {@code radius} around (x, y). */
+    public boolean queryAround(double x, double y, double radius, Visitor v) {
+        return queryBox(x - radius, y - radius, x + radius, y + radius, v);
+    }
+
+    /** Visits every id in the cells overlapping the box (x0, y0)-(x1, y1). */
+    public boolean queryBox(double x0, double y0, double x1, double y1, Visitor v) {
+        int c0 = col(x0), c1 = col(x1);
+        int r0 = row(y0), r1 = row(y1);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = cellIndex(c, r);
+                int[] ids = cells[cell];
+                for (int i = 0, n = counts[cell]; i < n; i++) {
+                    if (v.visit(ids[i])) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // First column the padded segment touches inside row r
+    private int colStart(int r, double x1, double y1, double x2, double y2, double pad) {
+        return col(bandX(r, x1, y1, x2, y2, pad, true) - pad);
+    }
+
+    private int colEnd(int r, double x1, double y1, double x2, double y2, double pad) {
+        return col(bandX(r, x1, y1, x2, y2, pad, false) + pad);
+    }
+
+    // Min or max x of the segment restricted to row r's band, widened by pad in y
+    private double bandX(int r, double x1, double y1, double x2, double y2, double pad, boolean min) {
+        double dy = y2 - y1;
+        if (dy == 0) return min ? Math.min(x1, x2) : Math.max(x1, x2);
+        double bandTop = minY + r * cellSize - pad;
+        double bandBottom = bandTop + cellSize + 2 * pad;
+        double t0 = (bandTop - y1) / dy;
+        double t1 = (bandBottom - y1) / dy;
+        double lo = Math.max(0, Math.min(t0, t1));
+        double hi = Math.min(1, Math.max(t0, t1));
+        if (lo > hi) { lo = 0; hi = 1; }
+        double xa = x1 + lo * (x2 - x1);
+        double xb = x1 + hi * (x2 - x1);
+        return min ? Math.min(xa, xb) : Math.max(xa, xb);
+    }
+
+    private int col(double x) {
+        int c = (int) Math.floor((x - minX) / cellSize);
+        return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor((y - minY) / cellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    private int cellIndex(int c, int r) {
+        return r * cols + c;
+    }
+
+    private void add(int cell, int id) {
+        int[] ids = cells[cell];
+        int n = counts[cell];
+        if (ids == null) {
+            ids = cells[cell] = new int[4];
+        } else if (n == ids.length) {
+            ids = cells[cell] = Arrays.copyOf(ids, n * 2);
+        }
+        ids[n] = id;
+        counts[cell] = n + 1;
+    }
+
+    // Undo removes the newest id, so the search from the end usually stops at once
+    private void remove(int cell, int id) {
+        int[] ids = cells[cell];
+        for (int i = counts[cell] - 1; i >= 0; i--) {
+            if (ids[i] == id) {
+                ids[i] = ids[--counts[cell]];
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bounded ring buffer for exactly one producer thread and one consumer
+ * thread, without locks.
+ *
+ * The producer only writes {@code tail} and the consumer only writes
+ * {@code head}; each publishes with a release store and reads the other's
+ * counter with an acquire load, so a slot is always filled before the
+ * consumer can see it and emptied before the producer can reuse it. Each
+ * side also caches the other's counter and only reloads it when the
+ * cached value says the ring is full (or empty), so a busy queue does not
+ * bounce one cache line between the two cores on every call.
+ */
+public final class Tesselate_SpscQueue<T> {
+
+    private static final VarHandle HEAD, TAIL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(Tesselate_SpscQueue.class, "head", long.class);
+            TAIL = lookup.findVarHandle(Tesselate_SpscQueue.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object[] slots;
+    private final int mask;
+
+    private long head;        // next slot to poll; written by the consumer
+    private long tailCache;   // consumer's last view of tail
+    private long tail;        // next slot to fill; written by the producer
+    private long headCache;   // producer's last view of head
+
+    /** A queue holding at least {@code capacity} elements; rounded up to a power of two. */
+    public Tesselate_SpscQueue(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Object[cap];
+        mask = cap - 1;
+    }
+
+    public int capacity() { return slots.length; }
+
+    /** Adds {@code x} at the tail; false if the queue is full. Producer thread only. */
+    public boolean offer(T x) {
+        if (x == null) throw new NullPointerException();
+        long t = tail;
+        if (t - headCache >= slots.length) {
+            headCache = (long) HEAD.getAcquire(this);
+            if (t - headCache >= slots.length) return false;
+        }
+        slots[(int) t & mask] = x;
+        TAIL.setRelease(this, t + 1);
+        return true;
+    }
+
+    /** Removes and returns the head, or null if the queue is empty. Consumer thread only. */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head;
+        if (h >= tailCache) {
+            tailCache = (long) TAIL.getAcquire(this);
+            if (h >= tailCache) return null;
+        }
+        int i = (int) h & mask;
+        T x = (T) slots[i];
+        slots[i] = null;
+        HEAD.setRelease(this, h + 1);
+        return x;
+    }
+
+    /** True if nothing is queued at this instant; either thread may ask. */
+    public boolean isEmpty() {
+        return (long) HEAD.getAcquire(this) == (long) TAIL.getAcquire(this);
+    }
+}
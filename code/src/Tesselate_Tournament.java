@@ -0,0 +1,276 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Batch self-play between strategies, for tuning bots and checking the
+ * rules.
+ *
+ * Every ordered pair of strategies (a strategy against itself included,
+ * which measures the seat advantage alone) plays the given number of games
+ * on every built-in pattern. Games are independent tasks on a
+ * work-stealing pool. Each one searches single-threaded, so throughput
+ * grows with the number of cores. Game g's dice and bots are seeded from
+ * (seed, g), so any game can be replayed from its row in the per-game CSV.
+ * Budgets are counted in playouts and plies, not milliseconds, so results
+ * do not depend on the machine.
+ *
+ * Strategies: random, greedy (most triangles now, ties at random),
+ * mcts:PLAYOUTS and search:DEPTH.
+ *
+ * The summary CSV (stdout) has one row per pattern and pairing, plus an
+ * "all" row per pairing: win rates (draws count half), score spread,
+ * game length and red_win_rate_equal, the rate RED would win at if
+ * triangles counted one point for both players. The gap to red_win_rate
+ * is what the 2:1 scoring is worth to RED.
+ *
+ * Usage: java Tesselate_Tournament [strategies] [games per pairing and pattern] [threads] [seed] [games csv]
+ */
+public final class Tesselate_Tournament {
+
+    private static final double CENTER_X = Tesselate_Board.WIDTH / 2, CENTER_Y = Tesselate_Board.HEIGHT / 2;
+    private static final long MAX_MILLIS_PER_MOVE = 60_000; // budgets are in playouts and plies; this is a backstop
+
+    /** A named way to build a fresh bot for one game. */
+    private static final class Strategy {
+        final String name;
+        final String kind;
+        final int budget;
+
+        Strategy(String spec) {
+            name = spec;
+            int colon = spec.indexOf(':');
+            kind = colon < 0 ? spec : spec.substring(0, colon);
+            budget = colon < 0 ? 0 : Integer.parseInt(spec.substring(colon + 1));
+            if (!kind.equals("random") && !kind.equals("greedy") && !kind.equals("mcts") && !kind.equals("search")) {
+                throw new IllegalArgumentException("unknown strategy " + spec);
+            }
+            if ((kind.equals("mcts") || kind.equals("search")) && budget <= 0) {
+                throw new IllegalArgumentException(spec + " needs a budget, e.g. " + kind + ":100");
+            }
+        }
+
+        Tesselate_Bot create(long seed) {
+            switch (kind) {
+                case "random": {
+                    SplittableRandom rnd = new SplittableRandom(seed);
+                    return s -> s.legalMove(rnd.nextInt(s.legalMoveCount()));
+                }
+                case "greedy":
+                    return new Greedy(seed);
+                case "mcts":
+                    return new Tesselate_MctsBot(MAX_MILLIS_PER_MOVE, budget, 1, seed);
+                default:
+                    return new Tesselate_ExpectiminimaxBot(MAX_MILLIS_PER_MOVE, budget, 1, 16);
+            }
+        }
+    }
+
+    /** Takes an edge that closes the most triangles; ties go to a random one. */
+    private static final class Greedy implements Tesselate_Bot {
+        private final SplittableRandom rnd;
+
+        Greedy(long seed) {
+            rnd = new SplittableRandom(seed);
+        }
+
+        @Override
+        public int chooseMove(Tesselate_Engine state) {
+            // Only threats close anything; with none, every move closes nothing
+            if (state.threatCount() == 0) return state.legalMove(rnd.nextInt(state.legalMoveCount()));
+            int best = -1, bestCloses = -1, ties = 0;
+            for (int c = state.nextThreat(0); c >= 0; c = state.nextThreat(c + 1)) {
+                int closes = state.closes(c);
+                if (closes > bestCloses) {
+                    best = c;
+                    bestCloses = closes;
+                    ties = 1;
+                } else if (closes == bestCloses && rnd.nextInt(++ties) == 0) {
+                    best = c; // reservoir pick among the ties
+                }
+            }
+            return best;
+        }
+    }
+
+    private final Strategy[] strategies;
+    private final int gamesPerCell;
+    private final long seed;
+    private final Tesselate_BoardAnalysis[] analyses = new Tesselate_BoardAnalysis[Tesselate_Patterns.COUNT];
+
+    // Results by game index; each slot is written by exactly one task
+    private final int[] scoreRed;
+    private final int[] scoreBlue;
+    private final int[] edges;
+    private final int[] turns;
+    private final long[] nanos;
+
+    private Tesselate_Tournament(Strategy[] strategies, int gamesPerCell, long seed) {
+        this.strategies = strategies;
+        this.gamesPerCell = gamesPerCell;
+        this.seed = seed;
+        int total = gameCount();
+        scoreRed = new int[total];
+        scoreBlue = new int[total];
+        edges = new int[total];
+        turns = new int[total];
+        nanos = new long[total];
+        for (int p = 0; p < analyses.length; p++) {
+            analyses[p] = Tesselate_AnalysisCache.shared().get(Tesselate_Patterns.create(p, CENTER_X, CENTER_Y),
+                    Tesselate_Engine.MAX_EDGE_LENGTH, Tesselate_Engine.DOT_RADIUS);
+        }
+    }
+
+    // Game index = ((pattern * n + red) * n + blue) * gamesPerCell + round
+    private int gameCount() { return Tesselate_Patterns.COUNT * strategies.length * strategies.length * gamesPerCell; }
+    private int patternOf(int g) { return g / gamesPerCell / strategies.length / strategies.length; }
+    private int redOf(int g) { return g / gamesPerCell / strategies.length % strategies.length; }
+    private int blueOf(int g) { return g / gamesPerCell % strategies.length; }
+    private long gameSeed(int g) { return Tesselate_Engine.mix(seed + 0x9e3779b97f4a7c15L * (g + 1)); }
+
+    private void play(int g) {
+        long start = System.nanoTime();
+        long s = gameSeed(g);
+        Tesselate_Engine e = new Tesselate_Engine(analyses[patternOf(g)], s);
+        Tesselate_Bot red = strategies[redOf(g)].create(Tesselate_Engine.mix(s ^ 1));
+        Tesselate_Bot blue = strategies[blueOf(g)].create(Tesselate_Engine.mix(s ^ 2));
+        int t = 0;
+        while (!e.isGameOver()) {
+            if (e.edgesRemaining() == 0) {
+                e.rollDice();
+                t++;
+            }
+            Tesselate_Bot mover = e.current() == Tesselate_Engine.Player.RED ? red : blue;
+            e.applyCandidate(mover.chooseMove(e));
+        }
+        scoreRed[g] = e.score(Tesselate_Engine.Player.RED);
+        scoreBlue[g] = e.score(Tesselate_Engine.Player.BLUE);
+        edges[g] = e.edgeCount();
+        turns[g] = t;
+        nanos[g] = System.nanoTime() - start;
+    }
+
+    /** Plays games [lo, hi), splitting until each task is one game. */
+    private final class Games extends RecursiveAction {
+        private final int lo, hi;
+
+        Games(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                play(lo);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Games(lo, mid), new Games(mid, hi));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String specs = args.length > 0 ? args[0] : "random,greedy,mcts:300,search:3";
+        int games = Math.max(1, args.length > 1 ? Integer.parseInt(args[1]) : 20);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        Path gamesCsv = args.length > 4 ? Path.of(args[4]) : null;
+
+        String[] names = specs.split(",");
+        Strategy[] strategies = new Strategy[names.length];
+        for (int i = 0; i < names.length; i++) strategies[i] = new Strategy(names[i].trim());
+
+        Tesselate_Tournament t = new Tesselate_Tournament(strategies, games, seed);
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        pool.invoke(t.new Games(0, t.gameCount()));
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d games in %.1f s on %d threads: %.1f games/s%n",
+                t.gameCount(), seconds, threads, t.gameCount() / seconds);
+
+        t.writeSummary(System.out);
+        if (gamesCsv != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(gamesCsv))) {
+                t.writeGames(out);
+            }
+        }
+    }
+
+    private void writeGames(PrintWriter out) {
+        out.println("game,seed,pattern,red,blue,red_score,blue_score,red_triangles,blue_triangles,edges,turns,millis");
+        for (int g = 0; g < gameCount(); g++) {
+            out.printf("%d,%d,%d,%s,%s,%d,%d,%d,%d,%d,%d,%.2f%n", g, gameSeed(g), patternOf(g),
+                    strategies[redOf(g)].name, strategies[blueOf(g)].name, scoreRed[g], scoreBlue[g],
+                    scoreRed[g] / 2, scoreBlue[g], edges[g], turns[g], nanos[g] / 1e6);
+        }
+    }
+
+    private void writeSummary(PrintStream out) {
+        out.println("pattern,red,blue,games,red_wins,blue_wins,draws,red_win_rate,red_score_mean,red_score_sd,"
+                + "blue_score_mean,blue_score_sd,diff_p10,diff_p50,diff_p90,edges_mean,turns_mean,"
+                + "red_win_rate_equal,scoring_advantage,millis_per_game");
+        int n = strategies.length;
+        List<Integer> cell = new ArrayList<>();
+        for (int r = 0; r < n; r++) {
+            for (int b = 0; b < n; b++) {
+                List<Integer> all = new ArrayList<>();
+                for (int p = 0; p < Tesselate_Patterns.COUNT; p++) {
+                    cell.clear();
+                    int first = ((p * n + r) * n + b) * gamesPerCell;
+                    for (int g = first; g < first + gamesPerCell; g++) cell.add(g);
+                    all.addAll(cell);
+                    summaryRow(out, String.valueOf(p), r, b, cell);
+                }
+                summaryRow(out, "all", r, b, all);
+            }
+        }
+    }
+
+    private void summaryRow(PrintStream out, String pattern, int r, int b, List<Integer> games) {
+        int count = games.size();
+        int redWins = 0, blueWins = 0, redWinsEqual = 0, drawsEqual = 0;
+        double sumRed = 0, sumRed2 = 0, sumBlue = 0, sumBlue2 = 0, sumEdges = 0, sumTurns = 0, sumNanos = 0;
+        int[] diff = new int[count];
+        for (int i = 0; i < count; i++) {
+            int g = games.get(i);
+            int red = scoreRed[g], blue = scoreBlue[g];
+            if (red > blue) redWins++;
+            else if (blue > red) blueWins++;
+            // With one point per triangle RED would have half its score
+            if (red / 2 > blue) redWinsEqual++;
+            else if (red / 2 == blue) drawsEqual++;
+            sumRed += red;
+            sumRed2 += (double) red * red;
+            sumBlue += blue;
+            sumBlue2 += (double) blue * blue;
+            sumEdges += edges[g];
+            sumTurns += turns[g];
+            sumNanos += nanos[g];
+            diff[i] = red - blue;
+        }
+        Arrays.sort(diff);
+        int draws = count - redWins - blueWins;
+        double winRate = (redWins + 0.5 * draws) / count;
+        double winRateEqual = (redWinsEqual + 0.5 * drawsEqual) / count;
+        out.printf("%s,%s,%s,%d,%d,%d,%d,%.4f,%.2f,%.2f,%.2f,%.2f,%d,%d,%d,%.1f,%.1f,%.4f,%.4f,%.2f%n",
+                pattern, strategies[r].name, strategies[b].name, count, redWins, blueWins, draws, winRate,
+                sumRed / count, sd(sumRed, sumRed2, count), sumBlue / count, sd(sumBlue, sumBlue2, count),
+                diff[count / 10], diff[count / 2], diff[Math.min(count - 1, count * 9 / 10)],
+                sumEdges / count, sumTurns / count, winRateEqual, winRate - winRateEqual, sumNanos / count / 1e6);
+    }
+
+    private static double sd(double sum, double sumSquares, int n) {
+        double mean = sum / n;
+        return Math.sqrt(Math.max(0, sumSquares / n - mean * mean));
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Fixed-size transposition table shared by search threads.
+ *
+ * Buckets hold two entries: the first keeps the deepest result seen for
+ * its slot, the second always takes the newest one. Each entry is a key
+ * word and a data word packing the value, depth, bound type and best move.
+ * Writers and readers lock only the stripe their bucket belongs to, so
+ * threads rarely wait on each other and never see half-written entries.
+ */
+public final class Tesselate_TranspositionTable {
+
+    public static final int EXACT = 0;
+    public static final int LOWER = 1; // value is a lower bound (search failed high)
+    public static final int UPPER = 2; // value is an upper bound (search failed low)
+
+    /** Largest candidate id a stored move can have: the move field is 21 bits and holds move + 1. */
+    public static final int MAX_MOVE = (1 << 21) - 2;
+
+    private static final int STRIPES = 256;
+    private static final long USED = 1L << 63;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private final Object[] locks = new Object[STRIPES];
+
+    /** Table with about {@code 1 << log2Entries} entries (16 bytes each). */
+    public Tesselate_TranspositionTable(int log2Entries) {
+        int buckets = 1 << Math.max(1, log2Entries - 1);
+        keys = new long[buckets * 2];
+        data = new long[buckets * 2];
+        bucketMask = buckets - 1;
+        for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+    }
+
+    /** Result of a probe; callers keep one per thread and reuse it. */
+    public static final class Entry {
+        public double value;
+        public int depth;
+        public int flag;
+        public int move; // candidate id, or -1
+    }
+
+    /** Fills {@code out} and returns true if the position is stored. */
+    public boolean probe(long key, Entry out) {
+        int bucket = (int) (key & bucketMask);
+        int slot = bucket << 1;
+        synchronized (locks[bucket & (STRIPES - 1)]) {
+            for (int i = slot; i < slot + 2; i++) {
+                if (keys[i] == key && (data[i] & USED) != 0) {
+                    unpack(data[i], out);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void store(long key, double value, int depth, int flag, int move) {
+        if (move < -1 || move > MAX_MOVE) throw new IllegalArgumentException("move out of range: " + move);
+        long packed = pack(value, depth, flag, move);
+        int bucket = (int) (key & bucketMask);
+        int slot = bucket << 1;
+        synchronized (locks[bucket & (STRIPES - 1)]) {
+            // Depth-preferred slot: take it when empty, same position or not shallower
+            if ((data[slot] & USED) == 0 || keys[slot] == key || depth >= depthOf(data[slot])) {
+                keys[slot] = key;
+                data[slot] = packed;
+            } else {
+                keys[slot + 1] = key;
+                data[slot + 1] = packed;
+            }
+        }
+    }
+
+    public void clear() {
+        for (int s = 0; s < STRIPES; s++) {
+            synchronized (locks[s]) {
+                for (int bucket = s; bucket <= bucketMask; bucket += STRIPES) {
+                    int i = bucket << 1;
+                    keys[i] = keys[i + 1] = 0;
+                    data[i] = data[i + 1] = 0;
+                }
+            }
+        }
+    }
+
+    // value: float bits 0..31, depth 32..39, flag 40..41, move + 1 42..62, bit 63 marks a used entry
+    private static long pack(double value, int depth, int flag, int move) {
+        return (Float.floatToRawIntBits((float) value) & 0xffffffffL)
+                | ((long) Math.min(depth, 255) << 32)
+                | ((long) flag << 40)
+                | ((long) (move + 1) << 42)
+                | USED;
+    }
+
+    private static int depthOf(long d) {
+        return (int) (d >>> 32) & 0xff;
+    }
+
+    private static void unpack(long d, Entry out) {
+        out.value = Float.intBitsToFloat((int) d);
+        out.depth = depthOf(d);
+        out.flag = (int) (d >>> 40) & 3;
+        out.move = (int) ((d & ~USED) >>> 42) - 1;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Zobrist keys for game positions. Keys are derived from fixed seeds with
+ * a mixing function instead of stored random tables, so they cover boards
+ * of any size and hash the same position to the same value in every run
+ * and every process; opening books and replays rely on that.
+ */
+public final class Tesselate_Zobrist {
+
+    private static final long EDGE_SEED = 0x3c6ef372fe94f82bL;
+    private static final long TRIANGLE_SEED = 0xa54ff53a5f1d36f1L;
+    private static final long BLUE_TO_MOVE = 0x510e527fade682d1L;
+    private static final long[] REMAINING = new long[7];
+
+    static {
+        for (int i = 0; i < REMAINING.length; i++) {
+            REMAINING[i] = Tesselate_Engine.mix(0x9b05688c2b3e6c1fL + i);
+        }
+    }
+
+    private Tesselate_Zobrist() {}
+
+    /** Key for candidate edge c being drawn. */
+    public static long edge(int c) {
+        return Tesselate_Engine.mix(EDGE_SEED + c * 0x9e3779b97f4a7c15L);
+    }
+
+    /** Key for the packed triangle being owned by the given player. */
+    public static long triangle(long triangleKey, Tesselate_Engine.Player owner) {
+        long k = Tesselate_Engine.mix(TRIANGLE_SEED ^ triangleKey);
+        return owner == Tesselate_Engine.Player.RED ? k : Tesselate_Engine.mix(k);
+    }
+
+    /** Side-to-move and edges-left-this-turn part of the key. */
+    public static long turn(Tesselate_Engine.Player current, int edgesRemaining) {
+        return (current == Tesselate_Engine.Player.BLUE ? BLUE_TO_MOVE : 0) ^ REMAINING[edgesRemaining];
+    }
+}